@@ -7,12 +7,14 @@ import org.jgrapht.graph.SimpleDirectedGraph;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.TreeSet;
 import java.util.logging.Logger;
 
 import dicograph.utils.Parameters;
+import dicograph.utils.PhaseEvents;
 import dicograph.utils.WeightedEdge;
 import ilog.concert.IloException;
 import ilog.concert.IloIntVar;
@@ -100,6 +102,7 @@ class CplexDiCographEditingSolver {
     }
 
     public List<SimpleDirectedGraph<Integer,DefaultEdge>> solve() throws IloException{
+        Object event = PhaseEvents.beginIlpSolve(vertexCount);
 
         // initialize boolean variables as "E_x,y"
         int x,y;
@@ -120,45 +123,21 @@ class CplexDiCographEditingSolver {
         this.objFn = solver.sum(solver.sum(symDiff1Expr),solver.sum(symDiff2Expr));
         solver.addMinimize(objFn);
 
-        int w, z, j, k;
-        // lazy constraints for each forbidden subgraph
+        int w, z;
+        // lazy constraints for each forbidden subgraph. Every vertex set once, with one ordering per labelling:
+        // the other orderings give the same constraints.
         for (w = 0; w<vertexCount; w++){
-            for (x = 0; x<vertexCount; x++){
-                if (w!=x){
-                    for (y = 0; y<vertexCount; y++){
-                        if (w!=y && x!=y){
-                            IloIntVar vars_3[] = {
-                                    E[w][x], E[w][y],
-                                    E[x][w],          E[x][y],
-                                    E[y][w], E[y][x]
-                            };
-                            // subgraphs of length 3:
-                            for(j = 0; j< ForbiddenSubgraph.len_3.length; j++){
-
-                                IloRange range = solver.le(solver.scalProd(
-                                        ForbiddenSubgraph.len_3[j].get(), vars_3), ForbiddenSubgraph.len_3[j].getThreshold(),
-                                        ForbiddenSubgraph.len_3[j] + "_" + w + "," + x + "," + y);
-                                solver.addLazyConstraint(range);
-                            }
+            for (x = w+1; x<vertexCount; x++){
+                for (y = x+1; y<vertexCount; y++){
+                    // subgraphs of length 3:
+                    for(ForbiddenSubgraph sub : ForbiddenSubgraph.len_3){
+                        addLazyConstraints(sub, w, x, y);
+                    }
 
-                            // subgraphs of length 4:
-                            for (z = 0; z<vertexCount; z++){
-                                if (w != z && x!=z && y!=z){
-                                    IloIntVar vars_4[] = {
-                                                     E[w][x], E[w][y], E[w][z],
-                                            E[x][w],          E[x][y], E[x][z],
-                                            E[y][w], E[y][x],          E[y][z],
-                                            E[z][w], E[z][x], E[z][y]
-                                    };
-                                    for(k = 0; k< ForbiddenSubgraph.len_4.length; k++) {
-
-                                        IloRange range = solver.le(solver.scalProd(
-                                                ForbiddenSubgraph.len_4[k].get(), vars_4), ForbiddenSubgraph.len_4[k].getThreshold(),
-                                                ForbiddenSubgraph.len_4[k] + "_" + w + "," + x + "," + y + "," + z);
-                                        solver.addLazyConstraint(range);
-                                    }
-                                }
-                            }
+                    // subgraphs of length 4:
+                    for (z = y+1; z<vertexCount; z++){
+                        for(ForbiddenSubgraph sub : ForbiddenSubgraph.len_4) {
+                            addLazyConstraints(sub, w, x, y, z);
                         }
                     }
                 }
@@ -200,10 +179,36 @@ class CplexDiCographEditingSolver {
         // free memory
         solver.end();
         log.info(solution);
+        PhaseEvents.endIlpSolve(event, editingDistances.size(),
+                editingDistances.isEmpty() ? -1 : Collections.min(editingDistances));
 
         return solutionGraphs;
     }
 
+    private void addLazyConstraints(ForbiddenSubgraph sub, int ... vertexSet) throws IloException {
+        int size = vertexSet.length;
+        int[] tuple = new int[size];
+        IloIntVar[] vars = new IloIntVar[sub.get().length];
+        for (int[] ordering : sub.getLabellings()) {
+            for (int i = 0; i < size; i++) {
+                tuple[i] = vertexSet[ordering[i]];
+            }
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    if (i != j) {
+                        vars[ForbiddenSubgraph.argIndex(i, j, size)] = E[tuple[i]][tuple[j]];
+                    }
+                }
+            }
+            StringBuilder name = new StringBuilder(sub.toString()).append('_').append(tuple[0]);
+            for (int i = 1; i < size; i++) {
+                name.append(',').append(tuple[i]);
+            }
+            IloRange range = solver.le(solver.scalProd(sub.get(), vars), sub.getThreshold(), name.toString());
+            solver.addLazyConstraint(range);
+        }
+    }
+
     private void initSymDiff(IloNumExpr symDiff1Expr[], IloNumExpr symDiff2Expr[]) throws IloException{
         DefaultEdge edge;
         int i = 0;
@@ -0,0 +1,183 @@
+package dicograph.Editing;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import dicograph.utils.Edge;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Subgraph-score for each pair of vertices {u,v}: the number of forbidden subgraphs containing both.
+ * Stored in an int matrix, entry u * n + v for u < v, so counting doesn't allocate anything.
+ * Pairs are ranked by descending score, ties by ascending (u,v).
+ */
+public final class EdgeScores {
+
+    private final int n;
+    private final int[] scores;
+
+    public EdgeScores(int nVertices) {
+        n = nVertices;
+        scores = new int[n * n];
+    }
+
+    public int getnVertices() {
+        return n;
+    }
+
+    private int index(int u, int v) {
+        if (u == v) {
+            throw new IllegalArgumentException("Error: no score for the loop " + u);
+        }
+        return u < v ? u * n + v : v * n + u;
+    }
+
+    public void add(int u, int v, int amount) {
+        scores[index(u, v)] += amount;
+    }
+
+    /**
+     * @return the score of {u,v}, in any order
+     */
+    public int get(int u, int v) {
+        return scores[index(u, v)];
+    }
+
+    public void addAll(EdgeScores other) {
+        if (other.n != n) {
+            throw new IllegalArgumentException("Error: " + other.n + " vertices, expected " + n);
+        }
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] += other.scores[i];
+        }
+    }
+
+    /**
+     * @return the number of pairs with positive score
+     */
+    public int size() {
+        int ret = 0;
+        for (int score : scores) {
+            if (score > 0) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the k best pairs with positive score, as u * n + v with u < v. Fewer if there aren't k.
+     */
+    public int[] topPairs(int k) {
+        // key: (max - score, pair), so the best pair has the smallest key
+        long[] keys;
+        int count;
+        if (k >= n * (n - 1) / 2) {
+            keys = new long[n * (n - 1) / 2];
+            count = 0;
+            for (int i = 0; i < scores.length; i++) {
+                if (scores[i] > 0) {
+                    keys[count++] = key(i);
+                }
+            }
+            Arrays.sort(keys, 0, count);
+        } else {
+            // max-heap of the k smallest keys
+            keys = new long[k];
+            count = 0;
+            for (int i = 0; i < scores.length && k > 0; i++) {
+                if (scores[i] <= 0) {
+                    continue;
+                }
+                long key = key(i);
+                if (count < k) {
+                    keys[count] = key;
+                    siftUp(keys, count++);
+                } else if (key < keys[0]) {
+                    keys[0] = key;
+                    siftDown(keys, k);
+                }
+            }
+            Arrays.sort(keys, 0, count);
+        }
+        int[] ret = new int[count];
+        for (int i = 0; i < count; i++) {
+            ret[i] = (int) keys[i];
+        }
+        return ret;
+    }
+
+    /**
+     * @return the k best pairs with positive score and their score, for the lazy method
+     */
+    public List<Map.Entry<Edge,Integer>> topEntries(int k) {
+        int[] pairs = topPairs(k);
+        List<Map.Entry<Edge,Integer>> ret = new ArrayList<>(pairs.length);
+        for (int pair : pairs) {
+            ret.add(new AbstractMap.SimpleImmutableEntry<>(new Edge(pair / n, pair % n), scores[pair]));
+        }
+        return ret;
+    }
+
+    private long key(int pair) {
+        return (long) (Integer.MAX_VALUE - scores[pair]) << 32 | pair;
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] >= heap[i]) {
+                return;
+            }
+            swap(heap, parent, i);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] > heap[child]) {
+                child++;
+            }
+            if (heap[i] >= heap[child]) {
+                return;
+            }
+            swap(heap, i, child);
+            i = child;
+        }
+    }
+
+    private static void swap(long[] heap, int i, int j) {
+        long tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+
+    @Override
+    public String toString() {
+        return topEntries(n * n).toString();
+    }
+}
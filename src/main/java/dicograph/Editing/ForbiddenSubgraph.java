@@ -4,12 +4,16 @@ import org.jgrapht.alg.util.Pair;
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.SimpleDirectedGraph;
 
+import java.util.ArrayList;
 import java.util.BitSet;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
 
-import dicograph.utils.Edge;
+import dicograph.graphIO.IntDigraph;
 
 /*
  *   This source file is part of the program for editing directed graphs
@@ -94,9 +98,144 @@ public enum ForbiddenSubgraph {
     // threshold = number of ones - 1 (i.e. must be less or equal to not contain this forbidden subgraph)
     private final int threshold;
 
+    // number of vertices, number of orderings of its vertices that give the same args (incl. identity)
+    // and one ordering for each different labelling, see getLabellings()
+    private final int size;
+    private final int automorphisms;
+    private final int[][] labellings;
+
     ForbiddenSubgraph(int[] args, int threshold){
         this.args = args;
         this.threshold = threshold;
+        size = args.length == 6 ? 3 : 4;
+
+        int myCode = arcCode(args, identity(size));
+        List<int[]> orderings = permutations(size);
+        Set<Integer> codes = new HashSet<>();
+        List<int[]> distinct = new ArrayList<>();
+        int count = 0;
+        for (int[] ordering : orderings) {
+            if (arcCode(args, ordering) == myCode) {
+                count++;
+            }
+            // orderings in lexicographic order, so the first of each labelling is kept.
+            // Vertex ordering[i] gets role i, vertex i role inverse[i]: same labelling iff same code of the inverse
+            int[] inverse = new int[size];
+            for (int i = 0; i < size; i++) {
+                inverse[ordering[i]] = i;
+            }
+            if (codes.add(arcCode(args, inverse))) {
+                distinct.add(ordering);
+            }
+        }
+        automorphisms = count;
+        labellings = distinct.toArray(new int[0][]);
+    }
+
+    // Arc codes: bit i set iff the i-th arc of the args order is present, i.e. for 3 vertices
+    // wx, wy, xw, xy, yw, yx and for 4 vertices wx, wy, wz, xw, xy, xz, yw, yx, yz, zw, zx, zy.
+    private static final ForbiddenSubgraph[] byArcCode3 = new ForbiddenSubgraph[1 << 6];
+    private static final ForbiddenSubgraph[] byArcCode4 = new ForbiddenSubgraph[1 << 12];
+
+    static {
+        for (ForbiddenSubgraph sub : values()) {
+            ForbiddenSubgraph[] table = sub.size == 3 ? byArcCode3 : byArcCode4;
+            for (int[] ordering : permutations(sub.size)) {
+                table[arcCode(sub.args, ordering)] = sub;
+            }
+        }
+    }
+
+    /**
+     * @return the index of the arc (i,j) in args and arc codes of subgraphs with size vertices.
+     */
+    static int argIndex(int i, int j, int size){
+        return i * (size - 1) + (j < i ? j : j - 1);
+    }
+
+    // arc code of the subgraph with its vertex ordering[i] at position i
+    private static int arcCode(int[] args, int[] ordering){
+        int size = ordering.length;
+        int code = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (i != j && args[argIndex(ordering[i], ordering[j], size)] > 0) {
+                    code |= 1 << argIndex(i, j, size);
+                }
+            }
+        }
+        return code;
+    }
+
+    private static int[] identity(int size){
+        int[] ret = new int[size];
+        for (int i = 0; i < size; i++) {
+            ret[i] = i;
+        }
+        return ret;
+    }
+
+    // all orderings of 0,...,size-1 in lexicographic order
+    private static List<int[]> permutations(int size){
+        List<int[]> ret = new ArrayList<>();
+        int[] current = identity(size);
+        while (true) {
+            ret.add(current.clone());
+            int i = size - 2;
+            while (i >= 0 && current[i] > current[i + 1]) {
+                i--;
+            }
+            if (i < 0) {
+                return ret;
+            }
+            int j = size - 1;
+            while (current[j] < current[i]) {
+                j--;
+            }
+            int tmp = current[i];
+            current[i] = current[j];
+            current[j] = tmp;
+            for (int l = i + 1, r = size - 1; l < r; l++, r--) {
+                tmp = current[l];
+                current[l] = current[r];
+                current[r] = tmp;
+            }
+        }
+    }
+
+    /**
+     * @param code arc code of a subdigraph induced by 3 vertices
+     * @return the forbidden subgraph it is isomorphic to, null if none
+     */
+    static ForbiddenSubgraph byArcCode3(int code){
+        return byArcCode3[code];
+    }
+
+    /**
+     * @param code arc code of a subdigraph induced by 4 vertices
+     * @return the forbidden subgraph it is isomorphic to, null if none
+     */
+    static ForbiddenSubgraph byArcCode4(int code){
+        return byArcCode4[code];
+    }
+
+    int getSize(){
+        return size;
+    }
+
+    /**
+     * @return the number of orderings of a vertex set inducing this subgraph that match args
+     */
+    int getAutomorphisms(){
+        return automorphisms;
+    }
+
+    /**
+     * Orderings of size vertices, one per labelling of this subgraph with them: args gives the same constraint on any
+     * ordering of the vertices as on exactly one of these. Their number is size! / getAutomorphisms().
+     */
+    int[][] getLabellings(){
+        return labellings;
     }
 
     int[] get(){
@@ -107,121 +246,51 @@ public enum ForbiddenSubgraph {
         return threshold;
     }
 
+    // vertices from which verticesToForbidden scans in parallel, if the common pool has more than one thread
+    static final int parallelThreshold = 48;
+
     static final ForbiddenSubgraph[] len_4 = {_p4, _n, _n_bar};
     static final ForbiddenSubgraph[] len_3 = {_d3, _a, _b, _c3, _d3_bar};
 
 
     public static Pair<Map<BitSet,ForbiddenSubgraph>,Map<BitSet,ForbiddenSubgraph>> verticesToForbidden(
-            SimpleDirectedGraph<Integer,DefaultEdge> g, HashMap<Edge,Integer> edgeToCount, boolean stopIfFound, Map<ForbiddenSubgraph,Integer> subgraphCounts){
-
-        HashMap<BitSet,ForbiddenSubgraph> len3 = new HashMap<>();
-        HashMap<BitSet,ForbiddenSubgraph> len4 = new HashMap<>();
+            SimpleDirectedGraph<Integer,DefaultEdge> g, EdgeScores edgeScores, boolean stopIfFound, Map<ForbiddenSubgraph,Integer> subgraphCounts){
+        return verticesToForbidden(IntDigraph.fromJGraphT(g, false), edgeScores, stopIfFound, subgraphCounts);
+    }
 
+    public static Pair<Map<BitSet,ForbiddenSubgraph>,Map<BitSet,ForbiddenSubgraph>> verticesToForbidden(
+            IntDigraph g, EdgeScores edgeScores, boolean stopIfFound, Map<ForbiddenSubgraph,Integer> subgraphCounts){
+        boolean parallel = g.getnVertices() >= parallelThreshold && ForkJoinPool.getCommonPoolParallelism() > 1;
+        return verticesToForbidden(g, edgeScores, stopIfFound, subgraphCounts, parallel);
+    }
 
-        int n = g.vertexSet().size();
-        boolean[][] E = new boolean[n][n];
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if(i != j){
-                    E[i][j] = g.containsEdge(i,j);
-                }
-            }
-        }
+    /**
+     * Finds the vertex sets inducing a forbidden subgraph. Every set once, but the counts are per ordering of the set.
+     * @param edgeScores for each pair of vertices, the number of forbidden subgraphs containing both is added
+     * @param stopIfFound stop as soon as one is found. Then the counts are not computed.
+     * @param subgraphCounts if not null, the number for each forbidden subgraph is added
+     * @param parallel whether to scan in parallel in the common fork-join pool
+     * @return the vertex sets of length 3 and 4 with their forbidden subgraph
+     */
+    public static Pair<Map<BitSet,ForbiddenSubgraph>,Map<BitSet,ForbiddenSubgraph>> verticesToForbidden(
+            IntDigraph g, EdgeScores edgeScores, boolean stopIfFound, Map<ForbiddenSubgraph,Integer> subgraphCounts,
+            boolean parallel){
 
-        // same procedure as in Cplex-Solver
-        int w, x,y, z;
-        boolean vars_3[], vars_4[];
-        for (w = 0; w<n; w++){
-            for (x = 0; x<n; x++){
-                if (w!=x){
-                    for (y = 0; y<n; y++){
-                        if (w!=y && x!=y){
-                            vars_3 = new boolean[]{
-                                    E[w][x], E[w][y],
-                                    E[x][w],          E[x][y],
-                                    E[y][w], E[y][x]
-                            };
-
-                            // subgraphs of length 3:
-                            if(findForbiddenSubgraphs(ForbiddenSubgraph.len_3,len3, edgeToCount, subgraphCounts, E, vars_3, stopIfFound, w,x,y) && stopIfFound) {
-                                return new Pair<>(len3, len4);
-                            }
-
-
-
-                            // subgraphs of length 4:
-                            for (z = 0; z<n; z++){
-                                if (w != z && x!=z && y!=z){
-                                    vars_4 = new boolean[]{
-                                            E[w][x], E[w][y], E[w][z],
-                                            E[x][w],          E[x][y], E[x][z],
-                                            E[y][w], E[y][x],          E[y][z],
-                                            E[z][w], E[z][x], E[z][y]
-                                    };
-                                    if(findForbiddenSubgraphs(ForbiddenSubgraph.len_4,len4, edgeToCount, subgraphCounts, E, vars_4, stopIfFound, w,x,y,z) && stopIfFound){
-                                        return new Pair<>(len3, len4);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+        ForbiddenSubgraphScan scan = new ForbiddenSubgraphScan(new ForbiddenSubgraphDetector(g), stopIfFound, parallel);
+        if(parallel) {
+            ForkJoinPool.commonPool().invoke(scan);
+        } else {
+            scan.compute();
         }
-
-        return new Pair<>(len3,len4);
+        scan.addCountsTo(edgeScores, subgraphCounts);
+        return new Pair<>(scan.getLen3(), scan.getLen4());
     }
 
-    private static boolean findForbiddenSubgraphs(ForbiddenSubgraph[] subs, Map<BitSet,ForbiddenSubgraph> subsMap, Map<Edge,Integer> edgeCount,
-                   Map<ForbiddenSubgraph,Integer> subgraphCounts, boolean[][] matrix, boolean[] subMatrix, boolean stop, int ... vertices){
-        int sum, index;
-        // check every subgraph:
-        for (ForbiddenSubgraph sub : subs) {
-
-            sum = 0;
-            // matrix must have same lenght as subgraphs.
-            for (index = 0; index < subMatrix.length; index++) {
-                if (subMatrix[index]) {
-                    sum += sub.get()[index];
-                }
-            }
-            // found one.
-            if (sum > sub.getThreshold()) {
-                BitSet vertexSet = new BitSet();
-                // subs
-                for (int v : vertices) {
-                    vertexSet.set(v);
-                }
-                subsMap.put(vertexSet, sub);
-                if (stop) {
-                    return true;
-                }
-                if(subgraphCounts != null){
-                    subgraphCounts.put(sub,subgraphCounts.get(sub)+1);
-                }
-
-                // edge scores
-                for (int u : vertices) {
-                    for (int v : vertices) {
-                        if (u != v && v > u) {
-                            // we have an edge of the forbidden subgraph
-                            if (matrix[u][v]) {
-                                Edge e = new Edge(u, v);
-                                int cnt = edgeCount.getOrDefault(e, 0);
-                                edgeCount.put(e, ++cnt);
-                            } else {
-                                // non-edge that might change it into a legal subgraph
-                                Edge e = new Edge(u, v);
-                                int cnt = edgeCount.getOrDefault(e, 0);
-                                edgeCount.put(e, ++cnt);
-                            }
-                        }
-                    }
-                }
-
-            }
-        }
-        return false;
+    /**
+     * @return true if g contains no forbidden subgraph
+     */
+    public static boolean isDiCograph(SimpleDirectedGraph<Integer,DefaultEdge> g){
+        return new ForbiddenSubgraphDetector(IntDigraph.fromJGraphT(g, false)).isDiCograph();
     }
 
     // started investigating here, but edge-score was much better.
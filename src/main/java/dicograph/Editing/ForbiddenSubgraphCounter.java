@@ -0,0 +1,204 @@
+package dicograph.Editing;
+
+import dicograph.graphIO.IntDigraph;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Number of vertex sets inducing a forbidden subgraph, kept up to date while single arcs are toggled.
+ * Toggling (u,v) only changes the sets containing u and v: the 3-sets are looked up one by one, the 4-sets {u,v,y,z}
+ * for fixed y bit-parallel in z. So delta and flip need O(n² / 64) word operations plus O(1) per changed set,
+ * instead of a new scan in O(n⁴ / 64).
+ */
+final class ForbiddenSubgraphCounter {
+
+    // bits of the arcs (u,v) and (v,u) in the arc code of u,v,y
+    private static final int UV = 1;
+    private static final int VU = 1 << 2;
+
+    private final ForbiddenSubgraphDetector detector;
+    private final int n;
+    private final int[] setCounts = new int[ForbiddenSubgraph.values().length]; // by ordinal
+    private int total;
+    private final EdgeScores pairCounts; // per ordering, as the edge scores of verticesToForbidden
+
+    private final int[] vertices3 = new int[3];
+    private final int[] vertices4 = new int[4];
+    private final long[] masksBefore = new long[64];
+    private final long[] masksAfter = new long[64];
+
+    ForbiddenSubgraphCounter(IntDigraph g) {
+        detector = new ForbiddenSubgraphDetector(g);
+        n = g.getnVertices();
+        pairCounts = new EdgeScores(n);
+        detector.find((sub, vertices) -> {
+            add(sub, vertices, 1);
+            return false;
+        });
+    }
+
+    /**
+     * @return the number of vertex sets inducing a forbidden subgraph
+     */
+    int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the number of vertex sets inducing sub
+     */
+    int getCount(ForbiddenSubgraph sub) {
+        return setCounts[sub.ordinal()];
+    }
+
+    /**
+     * @return the number of orderings of forbidden subgraphs containing u and v
+     */
+    int getPairCount(int u, int v) {
+        return pairCounts.get(u, v);
+    }
+
+    /**
+     * @return the change of getTotal() if the arc (u,v) was toggled
+     */
+    int delta(int u, int v) {
+        return scan(u, v, UV, false);
+    }
+
+    /**
+     * @return the change of getTotal() if both arcs (u,v) and (v,u) were toggled
+     */
+    int deltaBoth(int u, int v) {
+        return scan(u, v, UV | VU, false);
+    }
+
+    /**
+     * Toggles the arc (u,v) and updates the counts.
+     */
+    void flip(int u, int v) {
+        scan(u, v, UV, true);
+        detector.flip(u, v);
+    }
+
+    private void add(ForbiddenSubgraph sub, int[] vertices, int sign) {
+        setCounts[sub.ordinal()] += sign;
+        total += sign;
+        int orderings = sign * sub.getAutomorphisms();
+        for (int i = 0; i < vertices.length; i++) {
+            for (int j = i + 1; j < vertices.length; j++) {
+                pairCounts.add(vertices[i], vertices[j], orderings);
+            }
+        }
+    }
+
+    // compares the sets containing u and v before and after toggling the arcs of toggle in the arc code of u,v,...
+    private int scan(int u, int v, int toggle, boolean apply) {
+        if (u == v) {
+            throw new IllegalArgumentException("Error: no loops, u = v = " + u);
+        }
+        int delta = 0;
+        vertices3[0] = u;
+        vertices3[1] = v;
+        vertices4[0] = u;
+        vertices4[1] = v;
+        for (int y = 0; y < n; y++) {
+            if (y == u || y == v) {
+                continue;
+            }
+            int code = detector.arcCode(u, v, y);
+            ForbiddenSubgraph before = ForbiddenSubgraph.byArcCode3(code);
+            ForbiddenSubgraph after = ForbiddenSubgraph.byArcCode3(code ^ toggle);
+            if (before != after) {
+                delta += (after != null ? 1 : 0) - (before != null ? 1 : 0);
+                if (apply) {
+                    vertices3[2] = y;
+                    update(before, after, vertices3);
+                }
+            }
+
+            // the 4-sets {u,v,y,z} with z > y
+            ForbiddenSubgraph[] subsBefore = ForbiddenSubgraphDetector.len4ByCode[code];
+            ForbiddenSubgraph[] subsAfter = ForbiddenSubgraphDetector.len4ByCode[code ^ toggle];
+            if (subsBefore.length == 0 && subsAfter.length == 0) {
+                continue;
+            }
+            vertices4[2] = y;
+            for (int k = (y + 1) >>> 6; k < detector.getWords(); k++) {
+                long candidates = detector.allVertices(k);
+                if (k == (y + 1) >>> 6) {
+                    candidates &= -1L << (y + 1);
+                }
+                if (u >>> 6 == k) {
+                    candidates &= ~(1L << u);
+                }
+                if (v >>> 6 == k) {
+                    candidates &= ~(1L << v);
+                }
+                long anyBefore = matching(code, u, v, y, k, candidates, masksBefore);
+                long anyAfter = matching(code ^ toggle, u, v, y, k, candidates, masksAfter);
+                delta += Long.bitCount(anyAfter) - Long.bitCount(anyBefore);
+                if (!apply) {
+                    continue;
+                }
+                long changed = anyBefore | anyAfter;
+                while (changed != 0) {
+                    long lowest = changed & -changed;
+                    changed ^= lowest;
+                    ForbiddenSubgraph subBefore = subgraphOf(lowest, subsBefore, masksBefore);
+                    ForbiddenSubgraph subAfter = subgraphOf(lowest, subsAfter, masksAfter);
+                    if (subBefore != subAfter) {
+                        vertices4[3] = (k << 6) + Long.numberOfTrailingZeros(lowest);
+                        update(subBefore, subAfter, vertices4);
+                    }
+                }
+            }
+        }
+        return delta;
+    }
+
+    // fills masks for the 4-subgraphs of the code, returns their union
+    private long matching(int code, int w, int x, int y, int k, long candidates, long[] masks) {
+        boolean[][] zArcs = ForbiddenSubgraphDetector.zArcsByCode[code];
+        long ret = 0;
+        for (int i = 0; i < zArcs.length; i++) {
+            masks[i] = candidates & detector.matchingZ(zArcs[i], w, x, y, k);
+            ret |= masks[i];
+        }
+        return ret;
+    }
+
+    private static ForbiddenSubgraph subgraphOf(long bit, ForbiddenSubgraph[] subs, long[] masks) {
+        for (int i = 0; i < subs.length; i++) {
+            if ((masks[i] & bit) != 0) {
+                return subs[i];
+            }
+        }
+        return null;
+    }
+
+    private void update(ForbiddenSubgraph before, ForbiddenSubgraph after, int[] vertices) {
+        if (before != null) {
+            add(before, vertices, -1);
+        }
+        if (after != null) {
+            add(after, vertices, 1);
+        }
+    }
+}
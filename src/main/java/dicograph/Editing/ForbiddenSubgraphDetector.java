@@ -0,0 +1,243 @@
+package dicograph.Editing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dicograph.graphIO.IntDigraph;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Finds the vertex sets of size 3 and 4 that induce a forbidden subgraph, each set once with its vertices in
+ * ascending order w < x < y (< z).
+ *
+ * The induced subgraph is looked up by its arc code, see ForbiddenSubgraph.byArcCode3/4. For fixed w < x < y, the
+ * codes of the 4-sets only differ in the arcs with z, so the z > y of one code are an AND of six in- and out-neighbour
+ * bit rows, 64 candidates per word.
+ */
+final class ForbiddenSubgraphDetector {
+
+    // indices of the arcs between w, x, y and of the arcs with z in a 4-vertex arc code: wz, xz, yz, zw, zx, zy
+    private static final int[] FIXED_ARCS = {0, 1, 3, 4, 6, 7};
+    private static final int[] Z_ARCS = {2, 5, 8, 9, 10, 11};
+
+    // by arc code of w,x,y: the forbidden subgraphs of w,x,y,z and their arcs with z
+    static final ForbiddenSubgraph[][] len4ByCode = new ForbiddenSubgraph[64][];
+    static final boolean[][][] zArcsByCode = new boolean[64][][];
+
+    static {
+        List<List<ForbiddenSubgraph>> subs = new ArrayList<>(64);
+        List<List<boolean[]>> zArcs = new ArrayList<>(64);
+        for (int code = 0; code < 64; code++) {
+            subs.add(new ArrayList<>());
+            zArcs.add(new ArrayList<>());
+        }
+        for (int code4 = 0; code4 < 1 << 12; code4++) {
+            ForbiddenSubgraph sub = ForbiddenSubgraph.byArcCode4(code4);
+            if (sub != null) {
+                int code = 0;
+                for (int i = 0; i < FIXED_ARCS.length; i++) {
+                    if ((code4 & 1 << FIXED_ARCS[i]) != 0) {
+                        code |= 1 << i;
+                    }
+                }
+                boolean[] arcs = new boolean[Z_ARCS.length];
+                for (int i = 0; i < arcs.length; i++) {
+                    arcs[i] = (code4 & 1 << Z_ARCS[i]) != 0;
+                }
+                subs.get(code).add(sub);
+                zArcs.get(code).add(arcs);
+            }
+        }
+        for (int code = 0; code < 64; code++) {
+            len4ByCode[code] = subs.get(code).toArray(new ForbiddenSubgraph[0]);
+            zArcsByCode[code] = zArcs.get(code).toArray(new boolean[0][]);
+        }
+    }
+
+    /**
+     * Receives the matches. The vertex array is reused and only valid during the call.
+     */
+    interface Handler {
+        /**
+         * @param vertices w,x,y or w,x,y,z
+         * @return true to stop the search
+         */
+        boolean found(ForbiddenSubgraph sub, int[] vertices);
+
+        /**
+         * Polled regularly.
+         * @return true to stop the search, e.g. if another thread found something
+         */
+        default boolean cancelled() {
+            return false;
+        }
+    }
+
+    private final int n;
+    private final int words;
+    private final long[] out; // bit v of row u set iff (u,v) arc
+    private final long[] in;  // bit u of row v set iff (u,v) arc
+    private final long[] all; // the bits 0 to n-1
+
+    ForbiddenSubgraphDetector(IntDigraph g) {
+        n = g.getnVertices();
+        words = (n + 63) >>> 6;
+        out = new long[n * words];
+        in = new long[n * words];
+        for (int u = 0; u < n; u++) {
+            for (int e = g.outBegin(u); e < g.outEnd(u); e++) {
+                int v = g.outNeighbour(e);
+                out[u * words + (v >>> 6)] |= 1L << v;
+                in[v * words + (u >>> 6)] |= 1L << u;
+            }
+        }
+        all = new long[words];
+        for (int v = 0; v < n; v++) {
+            all[v >>> 6] |= 1L << v;
+        }
+    }
+
+    int getnVertices() {
+        return n;
+    }
+
+    private boolean arc(int u, int v) {
+        return (out[u * words + (v >>> 6)] & (1L << v)) != 0;
+    }
+
+    /**
+     * Toggles the arc (u,v).
+     */
+    void flip(int u, int v) {
+        out[u * words + (v >>> 6)] ^= 1L << v;
+        in[v * words + (u >>> 6)] ^= 1L << u;
+    }
+
+    /**
+     * @return the arc code of the vertices in this order, see ForbiddenSubgraph.byArcCode3
+     */
+    int arcCode(int w, int x, int y) {
+        return (arc(w, x) ? 1 : 0) | (arc(w, y) ? 1 << 1 : 0) | (arc(x, w) ? 1 << 2 : 0) | (arc(x, y) ? 1 << 3 : 0)
+                | (arc(y, w) ? 1 << 4 : 0) | (arc(y, x) ? 1 << 5 : 0);
+    }
+
+    int getWords() {
+        return words;
+    }
+
+    /**
+     * @return word k of the bit set of all vertices
+     */
+    long allVertices(int k) {
+        return all[k];
+    }
+
+    /**
+     * @return true if the graph contains no forbidden subgraph, i.e. is a di-cograph
+     */
+    boolean isDiCograph() {
+        return !find((sub, vertices) -> true);
+    }
+
+    /**
+     * Visits all vertex sets that induce a forbidden subgraph, ordered by w, x, y and z.
+     * The same subgraph is induced by getAutomorphisms() orderings of the set.
+     * @return true if the handler stopped the search
+     */
+    boolean find(Handler handler) {
+        return find(handler, 0, n);
+    }
+
+    /**
+     * Like find(handler), but only for the sets with smallest vertex w in [fromW, toW).
+     */
+    boolean find(Handler handler, int fromW, int toW) {
+        int[] vertices3 = new int[3];
+        int[] vertices4 = new int[4];
+        long[] masks = new long[64];
+        for (int w = fromW; w < toW; w++) {
+            for (int x = w + 1; x < n; x++) {
+                if (handler.cancelled()) {
+                    return true;
+                }
+                for (int y = x + 1; y < n; y++) {
+                    int code = arcCode(w, x, y);
+
+                    ForbiddenSubgraph sub3 = ForbiddenSubgraph.byArcCode3(code);
+                    if (sub3 != null) {
+                        vertices3[0] = w;
+                        vertices3[1] = x;
+                        vertices3[2] = y;
+                        if (handler.found(sub3, vertices3)) {
+                            return true;
+                        }
+                    }
+
+                    ForbiddenSubgraph[] subs4 = len4ByCode[code];
+                    if (subs4.length == 0) {
+                        continue;
+                    }
+                    boolean[][] zArcs = zArcsByCode[code];
+                    vertices4[0] = w;
+                    vertices4[1] = x;
+                    vertices4[2] = y;
+                    for (int k = (y + 1) >>> 6; k < words; k++) {
+                        long candidates = all[k];
+                        if (k == (y + 1) >>> 6) {
+                            candidates &= -1L << (y + 1); // z > y
+                        }
+
+                        long union = 0;
+                        for (int i = 0; i < subs4.length; i++) {
+                            masks[i] = candidates & matchingZ(zArcs[i], w, x, y, k);
+                            union |= masks[i];
+                        }
+                        // ascending z, at most one code each
+                        while (union != 0) {
+                            long lowest = union & -union;
+                            union ^= lowest;
+                            int i = 0;
+                            while ((masks[i] & lowest) == 0) {
+                                i++;
+                            }
+                            vertices4[3] = (k << 6) + Long.numberOfTrailingZeros(lowest);
+                            if (handler.found(subs4[i], vertices4)) {
+                                return true;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // word k of the z with the arcs wz, xz, yz, zw, zx, zy as given
+    long matchingZ(boolean[] arcs, int w, int x, int y, int k) {
+        return row(out, w, k, arcs[0]) & row(out, x, k, arcs[1]) & row(out, y, k, arcs[2])
+                & row(in, w, k, arcs[3]) & row(in, x, k, arcs[4]) & row(in, y, k, arcs[5]);
+    }
+
+    private long row(long[] rows, int v, int k, boolean set) {
+        long word = rows[v * words + k];
+        return set ? word : ~word;
+    }
+}
@@ -0,0 +1,212 @@
+package dicograph.Editing;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Scan for forbidden subgraphs whose smallest vertex is in [fromW, toW), see ForbiddenSubgraph.verticesToForbidden.
+ * Forked, the range is split in halves down to about n/(4*parallelism) vertices, so there are only a few leaves per
+ * worker. Each leaf counts into its own arrays; the results are merged in the order of the ranges, so they are the
+ * same as of one sequential scan.
+ * With stopIfFound, the first witness of any task cancels the others.
+ */
+final class ForbiddenSubgraphScan extends RecursiveTask<ForbiddenSubgraphScan> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ForbiddenSubgraphDetector detector;
+    private final boolean stopIfFound;
+    private final AtomicBoolean found; // shared by all tasks of one scan
+    private final int fromW;
+    private final int toW;
+    private final boolean fork;
+    private final int leafSize; // ranges up to this size are scanned sequentially
+
+    // results, allocated when needed
+    private List<HashMap<BitSet,ForbiddenSubgraph>> len3Parts; // one per range, in order
+    private List<HashMap<BitSet,ForbiddenSubgraph>> len4Parts;
+    private EdgeScores edgeScores;
+    private int[] subgraphCounts; // by ordinal
+
+    /**
+     * @param fork whether to split into subtasks, otherwise compute() is a sequential scan
+     */
+    ForbiddenSubgraphScan(ForbiddenSubgraphDetector detector, boolean stopIfFound, boolean fork) {
+        this(detector, stopIfFound, new AtomicBoolean(), 0, detector.getnVertices(), fork,
+                Math.max(1, detector.getnVertices() / (4 * ForkJoinPool.getCommonPoolParallelism())));
+    }
+
+    private ForbiddenSubgraphScan(ForbiddenSubgraphDetector detector, boolean stopIfFound, AtomicBoolean found,
+                                  int fromW, int toW, boolean fork, int leafSize) {
+        this.detector = detector;
+        this.stopIfFound = stopIfFound;
+        this.found = found;
+        this.fromW = fromW;
+        this.toW = toW;
+        this.fork = fork;
+        this.leafSize = leafSize;
+    }
+
+    @Override
+    protected ForbiddenSubgraphScan compute() {
+        if (!fork || toW - fromW <= leafSize) {
+            detector.find(new ForbiddenSubgraphDetector.Handler() {
+                @Override
+                public boolean found(ForbiddenSubgraph sub, int[] vertices) {
+                    return add(sub, vertices);
+                }
+
+                @Override
+                public boolean cancelled() {
+                    return stopIfFound && found.get();
+                }
+            }, fromW, toW);
+            return this;
+        }
+        int middle = (fromW + toW) >>> 1;
+        ForbiddenSubgraphScan left = new ForbiddenSubgraphScan(detector, stopIfFound, found, fromW, middle, true, leafSize);
+        ForbiddenSubgraphScan right = new ForbiddenSubgraphScan(detector, stopIfFound, found, middle, toW, true, leafSize);
+        right.fork();
+        left.compute();
+        right.join();
+        mergeFrom(left);
+        mergeFrom(right);
+        return this;
+    }
+
+    // returns true if the search can stop
+    private boolean add(ForbiddenSubgraph sub, int[] vertices) {
+        BitSet vertexSet = new BitSet();
+        for (int v : vertices) {
+            vertexSet.set(v);
+        }
+        if (vertices.length == 3) {
+            if (len3Parts == null) {
+                len3Parts = new ArrayList<>(1);
+                len3Parts.add(new HashMap<>());
+            }
+            len3Parts.get(0).put(vertexSet, sub);
+        } else {
+            if (len4Parts == null) {
+                len4Parts = new ArrayList<>(1);
+                len4Parts.add(new HashMap<>());
+            }
+            len4Parts.get(0).put(vertexSet, sub);
+        }
+        if (stopIfFound) {
+            found.set(true);
+            return true;
+        }
+
+        // the same subgraph for each automorphism, as if all orderings were checked
+        int orderings = sub.getAutomorphisms();
+        if (subgraphCounts == null) {
+            subgraphCounts = new int[ForbiddenSubgraph.values().length];
+            edgeScores = new EdgeScores(detector.getnVertices());
+        }
+        subgraphCounts[sub.ordinal()] += orderings;
+        // edge scores: every edge or non-edge of the forbidden subgraph might change it into a legal subgraph
+        for (int i = 0; i < vertices.length; i++) {
+            for (int j = i + 1; j < vertices.length; j++) {
+                edgeScores.add(vertices[i], vertices[j], orderings);
+            }
+        }
+        return false;
+    }
+
+    // the maps are only collected, they are merged once in getLen3/4
+    private void mergeFrom(ForbiddenSubgraphScan other) {
+        if (other.len3Parts != null) {
+            if (len3Parts == null) {
+                len3Parts = new ArrayList<>();
+            }
+            len3Parts.addAll(other.len3Parts);
+        }
+        if (other.len4Parts != null) {
+            if (len4Parts == null) {
+                len4Parts = new ArrayList<>();
+            }
+            len4Parts.addAll(other.len4Parts);
+        }
+        if (other.subgraphCounts != null) {
+            if (subgraphCounts == null) {
+                subgraphCounts = other.subgraphCounts;
+                edgeScores = other.edgeScores;
+            } else {
+                for (int i = 0; i < subgraphCounts.length; i++) {
+                    subgraphCounts[i] += other.subgraphCounts[i];
+                }
+                edgeScores.addAll(other.edgeScores);
+            }
+        }
+    }
+
+    Map<BitSet,ForbiddenSubgraph> getLen3() {
+        return merge(len3Parts);
+    }
+
+    Map<BitSet,ForbiddenSubgraph> getLen4() {
+        return merge(len4Parts);
+    }
+
+    private static Map<BitSet,ForbiddenSubgraph> merge(List<HashMap<BitSet,ForbiddenSubgraph>> parts) {
+        if (parts == null) {
+            return new HashMap<>();
+        }
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        int size = 0;
+        for (HashMap<BitSet,ForbiddenSubgraph> part : parts) {
+            size += part.size();
+        }
+        HashMap<BitSet,ForbiddenSubgraph> ret = new HashMap<>(size * 4 / 3 + 1);
+        for (HashMap<BitSet,ForbiddenSubgraph> part : parts) {
+            ret.putAll(part);
+        }
+        return ret;
+    }
+
+    /**
+     * Adds the counts to the scores and the map.
+     * @param subgraphCounts may be null
+     */
+    void addCountsTo(EdgeScores edgeScores, Map<ForbiddenSubgraph,Integer> subgraphCounts) {
+        if (this.subgraphCounts == null) {
+            return;
+        }
+        if (subgraphCounts != null) {
+            for (ForbiddenSubgraph sub : ForbiddenSubgraph.values()) {
+                if (this.subgraphCounts[sub.ordinal()] > 0) {
+                    subgraphCounts.put(sub, subgraphCounts.get(sub) + this.subgraphCounts[sub.ordinal()]);
+                }
+            }
+        }
+        edgeScores.addAll(this.edgeScores);
+    }
+}
@@ -0,0 +1,163 @@
+package dicograph.Editing;
+
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.SimpleDirectedGraph;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import dicograph.modDecomp.MDTree;
+import dicograph.utils.Edge;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * LRU cache of MD trees of edited graphs, keyed by the base graph and the set of arcs toggled an odd number of times.
+ * The order of the edits and doubles don't matter. Trees are stored in the binary format and each hit returns a
+ * new copy, so callers may change them. Thread-safe.
+ */
+final class MDCache {
+
+    private final int maxSize;
+    private final LinkedHashMap<Key, byte[]> trees;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxSize maximum number of trees, the least recently used one is evicted first
+     */
+    MDCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Error: cache size must be positive, was " + maxSize);
+        }
+        this.maxSize = maxSize;
+        trees = new LinkedHashMap<Key, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+                return size() > MDCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Canonical form of an edit set: sorted arc codes u * n + v of the arcs toggled an odd number of times.
+     */
+    static Key keyOf(SimpleDirectedGraph<Integer, DefaultEdge> baseGraph, Collection<? extends Collection<Edge>> editLists) {
+        long n = baseGraph.vertexSet().size();
+        int count = 0;
+        for (Collection<Edge> edits : editLists) {
+            count += edits.size();
+        }
+        long[] codes = new long[count];
+        count = 0;
+        for (Collection<Edge> edits : editLists) {
+            for (Edge e : edits) {
+                codes[count++] = e.getFirst() * n + e.getSecond();
+            }
+        }
+        Arrays.sort(codes);
+        // pairs of equal codes cancel out
+        int size = 0;
+        for (int i = 0; i < codes.length; i++) {
+            if (i + 1 < codes.length && codes[i] == codes[i + 1]) {
+                i++;
+            } else {
+                codes[size++] = codes[i];
+            }
+        }
+        return new Key(baseGraph, Arrays.copyOf(codes, size));
+    }
+
+    /**
+     * @return a copy of the cached tree with strong module intervals, null if none
+     */
+    MDTree get(Key key) throws IOException {
+        byte[] tree;
+        synchronized (this) {
+            tree = trees.get(key);
+            if (tree == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        MDTree ret = MDTree.readBinary(new ByteArrayInputStream(tree));
+        ret.getStrongModuleIntervals(key.baseGraph.vertexSet().size());
+        return ret;
+    }
+
+    void put(Key key, MDTree tree) {
+        byte[] binary = tree.toBinary();
+        synchronized (this) {
+            trees.put(key, binary);
+        }
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized int size() {
+        return trees.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MD cache: " + hits + " hits, " + misses + " misses, " + trees.size() + "/" + maxSize + " trees";
+    }
+
+    static final class Key {
+
+        private final SimpleDirectedGraph<Integer, DefaultEdge> baseGraph; // compared by identity
+        private final long[] arcCodes;
+        private final int hash;
+
+        private Key(SimpleDirectedGraph<Integer, DefaultEdge> baseGraph, long[] arcCodes) {
+            this.baseGraph = baseGraph;
+            this.arcCodes = arcCodes;
+            hash = 31 * System.identityHashCode(baseGraph) + Arrays.hashCode(arcCodes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return baseGraph == other.baseGraph && hash == other.hash && Arrays.equals(arcCodes, other.arcCodes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.jgrapht.io.ImportException;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -17,14 +18,21 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import dicograph.graphIO.GraphGenerator;
-import dicograph.modDecomp.DirectedMD;
+import dicograph.modDecomp.IncrementalMD;
 import dicograph.modDecomp.MDTree;
 import dicograph.modDecomp.MDTreeNode;
 import dicograph.utils.Edge;
+import dicograph.utils.Metrics;
 import dicograph.utils.Parameters;
+import dicograph.utils.PhaseEvents;
 import dicograph.utils.WeightedEdge;
 import ilog.concert.IloException;
 
@@ -49,6 +57,9 @@ import ilog.concert.IloException;
 
 class MDEditor {
 
+    // with -ea, parallel verifications are compared to sequential ones
+    private static final boolean checkParallelVerification = MDEditor.class.desiredAssertionStatus();
+
     private final SimpleDirectedGraph<Integer,DefaultEdge> inputGraph;
     private final int nVertices;
     private final Logger log;
@@ -61,6 +72,8 @@ class MDEditor {
 
     private final SimpleDirectedGraph<Integer, DefaultEdge> workGraph; // in theory, I can have several! One best enough, though.
     private final Map<ForbiddenSubgraph,Integer> subgraphStats;
+    private final IncrementalMD incrementalMD; // updates inputTree, the MD of inputGraph with oldInputEdits. Thread-safe.
+    private final MDCache mdCache; // MD trees by edits of inputGraph, may be null
 
 
     // 1st run: just one. Easy.
@@ -74,8 +87,8 @@ class MDEditor {
     //                  - check the Tree / forbiddenSubs. If successful: try removing loops.
 
 
-    public MDEditor(SimpleDirectedGraph<Integer,DefaultEdge> input, MDTree tree, Logger logger,
-                    List<Edge> oldEdits, EditType ed, Parameters params, boolean first){
+    MDEditor(SimpleDirectedGraph<Integer,DefaultEdge> input, MDTree tree, Logger logger,
+             List<Edge> oldEdits, EditType ed, Parameters params, boolean first, MDCache cache){
         inputGraph = input;
         p = params;
         nVertices = inputGraph.vertexSet().size();
@@ -85,7 +98,19 @@ class MDEditor {
         inputTree = tree;
         oldInputEdits = oldEdits;
         firstRun = first;
+        mdCache = cache;
         subgraphStats = new LinkedHashMap<>();
+        SimpleDirectedGraph<Integer, DefaultEdge> inputTreeGraph = inputGraph;
+        if(oldInputEdits != null){
+            inputTreeGraph = GraphGenerator.deepClone(inputGraph);
+            editGraph(inputTreeGraph, oldInputEdits);
+        }
+        incrementalMD = new IncrementalMD(inputTree, inputTreeGraph, log, params.getMDEngine());
+    }
+
+    public MDEditor(SimpleDirectedGraph<Integer,DefaultEdge> input, MDTree tree, Logger logger,
+                    List<Edge> oldEdits, EditType ed, Parameters params, boolean first){
+        this(input, tree, logger, oldEdits, ed, params, first, null);
     }
 
     public MDEditor(SimpleDirectedGraph<Integer,DefaultEdge> input, MDTree tree, Logger logger,EditType ed, Parameters params){
@@ -120,13 +145,16 @@ class MDEditor {
 
                 // Skip them during first edit.
                 if(firstRun && type.secondPrimeRun() &&  primeNode.getNumChildren() <= p.getBruteForceThreshold()){
-                    log.info("Skipping small prime during first run: " + primeNode);
+                    log.info(() -> "Skipping small prime during first run: " + primeNode);
                     continue;
                 }
 
                 log.info(()->"Editing prime: " + MDTree.beautify(primeNode.toString()));
 
+                long primeStart = System.nanoTime();
                 currentEditResults = computeRealEditsForNode(primeNode, relTime);
+                Metrics.recordTime("Editing/Prime edit", System.nanoTime() - primeStart);
+                Metrics.record("Editing/Prime size", primeNode.getNumChildren());
                 if(currentEditResults.isEmpty()){
                     log.warning(() -> "Aborting, no edit found for this prime: " + primeNode);
                     return finalSolutions;
@@ -136,7 +164,7 @@ class MDEditor {
                 // Combine every new edit with every previous edit
                 for(Map.Entry<Integer, List<List<Edge>>> editsForCost : currentEditResults.entrySet() ){
                     if(currentSolutions.isEmpty()){
-                        log.fine("Adding to empty 'currentSolutions': " + editsForCost.getValue());
+                        log.fine(() -> "Adding to empty 'currentSolutions': " + editsForCost.getValue());
                         allNewSolutions.addAll(editsForCost.getValue()); // addAll only OK if just one.
 
                     } else {
@@ -155,7 +183,7 @@ class MDEditor {
                         }
                     }
                 }
-                log.info("Current solutions. Count: " + allNewSolutions.size() + ", Solutions: " + allNewSolutions);
+                log.info(() -> "Current solutions. Count: " + allNewSolutions.size() + ", Solutions: " + allNewSolutions);
                 currentSolutions = allNewSolutions;
             }
         }
@@ -169,7 +197,8 @@ class MDEditor {
             return finalSolutions;
         }
 
-        log.info("Initially all edits of this run: " + currentSolutions);
+        if(log.isLoggable(Level.INFO))
+            log.info("Initially all edits of this run: " + currentSolutions);
         log.info("Verifying, eleminating loops and comparing.");
 
         if(oldInputEdits != null){
@@ -180,10 +209,15 @@ class MDEditor {
 
         // - Check all edits if valid
         // - Want to choose from ALL possible solutions if gap >= 0
+        long verificationStart = System.nanoTime();
+        List<Pair<Integer,MDTree>> verificationResults = verifyAll(currentSolutions);
+        Metrics.recordTime("Editing/Verification", System.nanoTime() - verificationStart);
+        Metrics.record("Editing/Candidates", currentSolutions.size());
+        int candidateNo = 0;
         for ( List<Edge> possibleEdit : currentSolutions) {
 
-            // verify, remove doubles, check loops
-            Pair <Integer,MDTree> verificationRes = verifyAndClean(possibleEdit);
+            // verified, doubles removed, loops checked
+            Pair <Integer,MDTree> verificationRes = verificationResults.get(candidateNo++);
             int cost = verificationRes.getFirst();
             MDTree solTree = verificationRes.getSecond();
 
@@ -222,6 +256,7 @@ class MDEditor {
             IloException{
 
         TreeMap<Integer,List<List<Edge>>> allRealEdits = new TreeMap<>();
+        Object event = PhaseEvents.beginPrimeEdit(type.toString(), primeNode.getNumChildren());
         PrimeSubgraph subGraph = new PrimeSubgraph(workGraph,primeNode,p, log, type);
 
         log.fine(() ->"Subgraph: " + subGraph.toString());
@@ -279,11 +314,104 @@ class MDEditor {
             subgraphStats.put(fsubEntry.getKey(), newCount);
         }
 
+        int editsTried = 0;
+        for(List<List<WeightedEdge>> edits : allPossibleEdits.values())
+            editsTried += edits.size();
+        PhaseEvents.endPrimeEdit(event, editsTried, bestCost(allRealEdits));
+
         // else: no solution for this prime.
         return allRealEdits;
     }
 
-    private Pair<Integer,MDTree> verifyAndClean(List<Edge> currentList) throws ImportException, InterruptedException, IOException{
+    // lowest positive cost of the map, else the lowest negative one (not yet successful). 0 if empty.
+    static int bestCost(TreeMap<Integer,?> costToEdits){
+        if(costToEdits.isEmpty())
+            return 0;
+        Integer successful = costToEdits.higherKey(0);
+        return successful != null ? successful : costToEdits.firstKey();
+    }
+
+    // verifies the candidates with p.getVerificationThreads() threads. Results in the order of the candidates,
+    // so the caller merges them just as in the sequential case.
+    private List<Pair<Integer,MDTree>> verifyAll(List<List<Edge>> candidates)
+            throws ImportException, InterruptedException, IOException{
+
+        List<Pair<Integer,MDTree>> results = new ArrayList<>(candidates.size());
+        int nThreads = Math.min(p.getVerificationThreads(), candidates.size());
+        if(nThreads <= 1){
+            for(List<Edge> candidate : candidates){
+                results.add(verifyAndClean(candidate, true));
+            }
+            return results;
+        }
+
+        log.info(()->"Verifying " + candidates.size() + " candidates with " + nThreads + " threads.");
+        List<List<Edge>> copies = null; // verifyAndClean changes the lists
+        if(checkParallelVerification){
+            copies = new ArrayList<>(candidates.size());
+            for(List<Edge> candidate : candidates){
+                copies.add(new ArrayList<>(candidate));
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        try {
+            List<Future<Pair<Integer,MDTree>>> futures = new ArrayList<>(candidates.size());
+            for(List<Edge> candidate : candidates){
+                futures.add(pool.submit(() -> verifyAndClean(candidate, true)));
+            }
+            for(Future<Pair<Integer,MDTree>> future : futures){
+                results.add(get(future));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if(checkParallelVerification){
+            checkSameAsSequential(copies, candidates, results);
+        }
+        return results;
+    }
+
+    // verifies the copies one after the other, without the cache. Throws if any result or tree differs.
+    private void checkSameAsSequential(List<List<Edge>> copies, List<List<Edge>> candidates, List<Pair<Integer,MDTree>> results)
+            throws ImportException, InterruptedException, IOException{
+        for (int i = 0; i < copies.size(); i++) {
+            Pair<Integer,MDTree> expected = verifyAndClean(copies.get(i), false);
+            Pair<Integer,MDTree> actual = results.get(i);
+            if (!expected.getFirst().equals(actual.getFirst()) || !copies.get(i).equals(candidates.get(i))
+                    || !Arrays.equals(expected.getSecond().toCanonicalBinary(), actual.getSecond().toCanonicalBinary())) {
+                throw new IllegalStateException("Error: parallel verification of candidate " + i + " differs: "
+                        + actual.getFirst() + ", " + candidates.get(i) + ", " + actual.getSecond() + " instead of "
+                        + expected.getFirst() + ", " + copies.get(i) + ", " + expected.getSecond());
+            }
+        }
+        log.fine(()->"Parallel verification of " + copies.size() + " candidates equals sequential one.");
+    }
+
+    // rethrows the checked exceptions of verifyAndClean
+    private static Pair<Integer,MDTree> get(Future<Pair<Integer,MDTree>> future)
+            throws ImportException, InterruptedException, IOException{
+        try {
+            return future.get();
+        } catch (ExecutionException e){
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ImportException) {
+                throw (ImportException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // Does not change any shared state: the edits are applied as overlay on the graph of inputTree.
+    // Only currentList is cleaned. Without useCache, the MD trees are computed even if cached.
+    private Pair<Integer,MDTree> verifyAndClean(List<Edge> currentList, boolean useCache) throws ImportException, InterruptedException, IOException{
 
         // check for loops and doubles:
         List<Edge> loops = new LinkedList<>();
@@ -311,38 +439,72 @@ class MDEditor {
 //            }
 //        }
         if(currentList.removeAll(doubles.keySet()))
-            log.info("Removed doubles: " + doubles.keySet());
+            log.info(() -> "Removed doubles: " + doubles.keySet());
 
-        // 1st: is this edit a solution?
-        editGraph(workGraph,currentList); // no loops removed yet
-        DirectedMD verifyMD = new DirectedMD(workGraph, log, false);
-        MDTree verifyTree = verifyMD.computeModularDecomposition();
+        // 1st: is this edit a solution? No loops removed yet.
+        // only the modules containing edited arcs are decomposed again
+        MDTree verifyTree = computeModularDecomposition(currentList, null, useCache);
         int ret;
 
         if(verifyTree.getPrimeModulesBottomUp().isEmpty()) {
 
             // 2nd: if yes - can I remove loops?
             if (!loops.isEmpty()) {
-                editGraph(workGraph, loops);
-                DirectedMD looplessMD = new DirectedMD(workGraph, log, false);
-                MDTree looplessRes = looplessMD.computeModularDecomposition();
+                MDTree looplessRes = computeModularDecomposition(currentList, loops, useCache);
                 if (looplessRes.getPrimeModulesBottomUp().isEmpty()) {
                     log.info(()->"Removing Loops: " + loops);
                     currentList.removeAll(loops);
                     verifyTree = looplessRes;
                 }
-                editGraph(workGraph, loops); // edit back.
             }
             ret = currentList.size();
 
         } else {
             ret = - currentList.size();
         }
-        editGraph(workGraph, currentList);
 
         return new Pair<>(ret,verifyTree);
     }
 
+    // MD of inputGraph edited by the given lists, from the cache if possible and useCache
+    private MDTree computeModularDecomposition(List<Edge> edits, List<Edge> moreEdits, boolean useCache)
+            throws ImportException, InterruptedException, IOException{
+        MDCache.Key key = null;
+        if(mdCache != null && useCache){
+            List<List<Edge>> allEdits = new ArrayList<>(2);
+            allEdits.add(edits);
+            if(moreEdits != null)
+                allEdits.add(moreEdits);
+            key = MDCache.keyOf(inputGraph, allEdits);
+            MDTree cached = mdCache.get(key);
+            if(cached != null)
+                return cached;
+        }
+        MDTree ret = incrementalMD.computeModularDecomposition(toggledFromInputTree(edits, moreEdits));
+        if(key != null)
+            mdCache.put(key, ret);
+        return ret;
+    }
+
+    // the edits of inputGraph are the given lists. Returns the arcs toggled an odd number of times
+    // relative to the graph of inputTree, i.e. inputGraph edited by oldInputEdits.
+    private List<Edge> toggledFromInputTree(List<Edge> edits, List<Edge> moreEdits){
+        LinkedHashMap<Edge, Boolean> odd = new LinkedHashMap<>();
+        List<List<Edge>> allEdits = new ArrayList<>(3);
+        allEdits.add(edits);
+        if(moreEdits != null)
+            allEdits.add(moreEdits);
+        if(oldInputEdits != null)
+            allEdits.add(oldInputEdits);
+        for(List<Edge> editList : allEdits){
+            for(Edge e : editList){
+                if(odd.remove(e) == null)
+                    odd.put(e, true);
+            }
+        }
+        return new ArrayList<>(odd.keySet());
+    }
+
     // testing purposes only
     static boolean editIsValid(List<Edge> oldInputEdits, List<Edge> _prev, List<Edge> _new){
         if(oldInputEdits == null)
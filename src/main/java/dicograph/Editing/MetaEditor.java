@@ -9,20 +9,21 @@ import org.jgrapht.io.ImportException;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import dicograph.graphIO.IntegerComponentNameProvider;
 import dicograph.modDecomp.DirectedMD;
+import dicograph.modDecomp.IncrementalMD;
 import dicograph.modDecomp.MDTree;
 import dicograph.utils.Edge;
+import dicograph.utils.Metrics;
 import dicograph.utils.Parameters;
-import dicograph.utils.Triple;
 import dicograph.utils.WeightedEdge;
 import ilog.concert.IloException;
 
@@ -56,7 +57,8 @@ public class MetaEditor {
     private final Logger log;
     private final MDTree origTree;
     private final int nVertices;
-    private Set<Triple> cotreeTriples;
+    private final MDCache mdCache; // shared by all runs on inputGraph, may be null
+    private MDTree cotree;
     private int ilpCost;
     private int greedyCost;
     private int greedyCorrectRun;
@@ -83,8 +85,11 @@ public class MetaEditor {
         nVertices = g.vertexSet().size();
         p = params;
         log = logger;
-        DirectedMD modDecomp = new DirectedMD(inputGraph, log, false);
+        DirectedMD modDecomp = new DirectedMD(inputGraph, log, false, p.getMDEngine());
+        modDecomp.setExecutor(p.getMDExecutor());
+        modDecomp.setCrossCheck(p.isMDCrossCheck());
         origTree = modDecomp.computeModularDecomposition();
+        mdCache = p.getMDCacheSize() > 0 ? new MDCache(p.getMDCacheSize()) : null;
         greedyCorrectRun = 0;
         bestTTDistance = 12345678.9;
         greedyTTDistance = 12345678.9;
@@ -99,8 +104,8 @@ public class MetaEditor {
         List<Solution> bestSolutions = new LinkedList<>();
 
         // already cograph?
-        log.fine("Input graph:\n" + inputGraph);
-        log.info("MD of input graph:\n" + MDTree.beautify(origTree.toString()));
+        log.fine(() -> "Input graph:\n" + inputGraph);
+        log.info(() -> "MD of input graph:\n" + MDTree.beautify(origTree.toString()));
         if(origTree.getPrimeModulesBottomUp().isEmpty()){
             log.info("Input graph is already a dicograph. Aborting.");
             Solution trivial = new Solution(inputGraph, origTree, new LinkedList<>(), EditType.None);
@@ -140,6 +145,9 @@ public class MetaEditor {
         if(p.isIlpOnly()){
             allMethodsSolutions.add(  computeGlobalILP() );
         }
+        if(mdCache != null){
+            log.info(mdCache.toString());
+        }
 
         // how good was lazy compared to ILP?
         if(greedySolution != null && bestILPSolns != null){
@@ -177,22 +185,18 @@ public class MetaEditor {
                 bestSolutions.addAll(solutionMap.firstEntry().getValue());
             }
             // triple metric - check all!
-            if(cotreeTriples != null){
+            if(cotree != null){
                 int divisor =  2*binomial(nVertices,3); // 2* (n \choose 3) possible triples
 
                 for(List<Solution> solutions : solutionMap.values()) {
                     for(Solution solution : solutions) {
 
                         MDTree solTree = solution.getTree();
-                        log.fine("Tree of solution: " + MDTree.beautify(solTree.toString()));
-                        Set<Triple> solTriples = solTree.getTriples();
-                        Set<Triple> coTriples = new HashSet<>(cotreeTriples);
-                        coTriples.removeAll(solTriples);
-                        solTriples.removeAll(cotreeTriples);
-                        int tt_dist = coTriples.size() + solTriples.size();
+                        log.fine(() -> "Tree of solution: " + MDTree.beautify(solTree.toString()));
+                        long tt_dist = cotree.getTripletDistance(solTree);
                         double tt_distance_normed = (1.0 *tt_dist) / divisor;
                         solution.setTreeDistance(tt_distance_normed);
-                        log.info("TT-distance: " + tt_dist + ", Normalized: " + df.format(tt_distance_normed) + " for solution: " + solution);
+                        log.info(() -> "TT-distance: " + tt_dist + ", Normalized: " + df.format(tt_distance_normed) + " for solution: " + solution);
                         if(solution.getType() == EditType.Lazy)
                             greedyTTDistance = tt_distance_normed;
 
@@ -221,7 +225,8 @@ public class MetaEditor {
             }
         }
         if(bestDistSolution != null){
-            log.info("Best TT-Distance: " + df.format(bestTTDistance) + " for solution: " + bestDistSolution);
+            if(log.isLoggable(Level.INFO))
+                log.info("Best TT-Distance: " + df.format(bestTTDistance) + " for solution: " + bestDistSolution);
             bestSolutions.remove(bestDistSolution);
             bestSolutions.add(0,bestDistSolution);
         }
@@ -235,7 +240,9 @@ public class MetaEditor {
     private TreeMap<Integer, List<Solution>> computeGlobalILP() throws IOException, ImportException, IloException, InterruptedException{
         TreeMap<Integer, List<Solution>> ret = new TreeMap<>();
         CplexDiCographEditingSolver glSolver = new CplexDiCographEditingSolver(inputGraph, p, log);
+        long ilpStart = System.nanoTime();
         glSolver.solve();
+        Metrics.recordTime("Editing/ILP solve", System.nanoTime() - ilpStart);
         for (int i = 0; i < glSolver.getEditingDistances().size(); i++) {
 
             int val = glSolver.getEditingDistances().get(i);
@@ -243,8 +250,14 @@ public class MetaEditor {
             for(WeightedEdge e : glSolver.getSolutionEdgeEdits().get(i)){
                 edges.add( new Edge(e.getFirst(), e.getSecond()));
             }
-            DirectedMD solMD = new DirectedMD(glSolver.getSolutionGraphs().get(i), log,false);
-            MDTree solTree = solMD.computeModularDecomposition();
+            MDCache.Key key = mdCache != null ? MDCache.keyOf(inputGraph, Collections.singletonList(edges)) : null;
+            MDTree solTree = mdCache != null ? mdCache.get(key) : null;
+            if(solTree == null) {
+                IncrementalMD solMD = new IncrementalMD(origTree, nVertices, log, p.getMDEngine());
+                solTree = solMD.computeModularDecomposition(glSolver.getSolutionGraphs().get(i), edges);
+                if(mdCache != null)
+                    mdCache.put(key, solTree);
+            }
             ret.putIfAbsent(val,new LinkedList<>());
             ret.get(val).add(new Solution(glSolver.getSolutionGraphs().get(i),solTree,edges, EditType.ILPGlobal));
         }
@@ -255,7 +268,7 @@ public class MetaEditor {
     IOException, ImportException, InterruptedException, IloException{
 
         log.info("Starting Editor for method: " + method);
-        MDEditor firstEditor = new MDEditor(inputGraph, origTree, log, method, p);
+        MDEditor firstEditor = new MDEditor(inputGraph, origTree, log, null, method, p, true, mdCache);
 
         TreeMap<Integer, List<Solution>> firstSolns = firstEditor.editIntoCograph(0.5); // might be empty.
         subgraphCounts = firstEditor.getSubgraphStats();
@@ -283,7 +296,7 @@ public class MetaEditor {
             while (tryNextOnce || currPrimeSize < prevPrimeSize){ // abort if no changes.
 
                 prevPrimeSize = currPrimeSize;
-                firstEditor = new MDEditor(inputGraph,firstSol.getTree(), log, firstSol.getEdits(), method, p, true);
+                firstEditor = new MDEditor(inputGraph,firstSol.getTree(), log, firstSol.getEdits(), method, p, true, mdCache);
                 firstSolns = firstEditor.editIntoCograph(1.0 /denom); // geometric for time. Most is spend on the 1st edit.
                 firstSol = firstSolns.firstEntry().getValue().get(0);
                 firstTree = firstSol.getTree();
@@ -312,7 +325,7 @@ public class MetaEditor {
 
         // second call. Input graph original but firstTree edited.
         log.info(()-> method + ": Starting second run.");
-        MDEditor secondEdit = new MDEditor(inputGraph, firstTree, log, firstSol.getEdits(), method, p, false);
+        MDEditor secondEdit = new MDEditor(inputGraph, firstTree, log, firstSol.getEdits(), method, p, false, mdCache);
         TreeMap<Integer, List<Solution>> secondSolns = secondEdit.editIntoCograph(1.0 / p.getLazyRestart()); // don't want early timeout for brute force!!!
         if(secondSolns.isEmpty()){
             log.warning(()-> method + " method was unsuccessful.");
@@ -322,8 +335,8 @@ public class MetaEditor {
         return secondSolns;
     }
 
-    public void setCotreeTriples(Set<Triple> cotreeTriples) {
-        this.cotreeTriples = cotreeTriples;
+    public void setCotree(MDTree cotree) {
+        this.cotree = cotree;
     }
 
     public int getIlpCost() {
@@ -12,20 +12,24 @@ import org.jgrapht.io.ImportException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.BitSet;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import dicograph.graphIO.IntDigraph;
 import dicograph.modDecomp.DirectedMD;
 import dicograph.modDecomp.MDTree;
 import dicograph.modDecomp.MDTreeNode;
 import dicograph.utils.Edge;
+import dicograph.utils.Metrics;
 import dicograph.utils.Parameters;
+import dicograph.utils.PhaseEvents;
 import dicograph.utils.TimerLog;
 import dicograph.utils.WeightedEdge;
 import ilog.concert.IloException;
@@ -66,6 +70,8 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
     private final EditType method;
 
     private int lazyReach;
+    private int editsTried; // evaluated edges and brute-force subsets during computeEdits
+    private ForbiddenSubgraphCounter forbiddenCounter; // kept in sync by edit() once created
 
 
     /**
@@ -112,6 +118,15 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
      * @throws IloException
      */
     public TreeMap<Integer, List<List<WeightedEdge>>> computeEdits(boolean first, Map<ForbiddenSubgraph,Integer> subgraphCounts, double relTime, boolean veryFirstTime)
+    throws InterruptedException, IOException, ImportException, IloException{
+        Object event = PhaseEvents.beginSubgraphEdits(method.toString(), nVertices);
+        editsTried = 0;
+        TreeMap<Integer, List<List<WeightedEdge>>> ret = computeEditsForMethod(first, subgraphCounts, relTime, veryFirstTime);
+        PhaseEvents.endSubgraphEdits(event, editsTried, MDEditor.bestCost(ret));
+        return ret;
+    }
+
+    private TreeMap<Integer, List<List<WeightedEdge>>> computeEditsForMethod(boolean first, Map<ForbiddenSubgraph,Integer> subgraphCounts, double relTime, boolean veryFirstTime)
     throws InterruptedException, IOException, ImportException, IloException{
         TreeMap<Integer, List<List<WeightedEdge>>> costToEdges = new TreeMap<>(); // results
 
@@ -119,15 +134,15 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
         int limit = p.getBruteForceThreshold() * (p.getBruteForceThreshold() -1 );
 
         // Recognize all forbidden subgraphs and compute subgraph-scores for edits.
-        HashMap<Edge,Integer> edgeToCount = new HashMap<>();
-        Pair<Map<BitSet,ForbiddenSubgraph>,Map<BitSet,ForbiddenSubgraph>> badSubs = ForbiddenSubgraph.verticesToForbidden(this, edgeToCount,false, subgraphCounts);
+        EdgeScores edgeScores = new EdgeScores(nVertices);
+        Pair<Map<BitSet,ForbiddenSubgraph>,Map<BitSet,ForbiddenSubgraph>> badSubs = ForbiddenSubgraph.verticesToForbidden(this, edgeScores,false, subgraphCounts);
         log.finer(()->"Length 3:\n" + badSubs.getFirst());
         log.finer(()->"Length 4:\n" + badSubs.getSecond());
         log.info(()->"Occurences for each Subgraph: " + subgraphCounts);
         // sort descending
-        List<Map.Entry<Edge,Integer>> edgesToScore = new ArrayList<>(edgeToCount.entrySet());
-        edgesToScore.sort( Comparator.comparingInt(e ->  -e.getValue()));
-        log.fine("Edges by subgraph-score: " + edgesToScore.size() + "\n" + edgesToScore);
+        List<Map.Entry<Edge,Integer>> edgesToScore = edgeScores.topEntries(edgeScores.size());
+        if(log.isLoggable(Level.FINE))
+            log.fine("Edges by subgraph-score: " + edgesToScore.size() + "\n" + edgesToScore);
 
 
 
@@ -163,8 +178,10 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
             log.info(()->"Initial Prime size: " + initialPrimeSize);
             SimpleDirectedGraph<Integer,DefaultEdge> graphOfEditEdges = new SimpleDirectedGraph<>(DefaultEdge.class);
             ConnectivityInspector<Integer,DefaultEdge> pathFinder = new ConnectivityInspector<>(graphOfEditEdges);
-            List<WeightedEdge> currEdgeList = new LinkedList<>(); // just one edge
             List<WeightedEdge> allEdgesList = new LinkedList<>();
+            // forbidden subgraphs of this graph edited by allEdgesList, for the local edit scores. Synced once per step.
+            ForbiddenSubgraphCounter editedCounter = p.isUseGlobal() && !first ? null :
+                    new ForbiddenSubgraphCounter(IntDigraph.fromJGraphT(this, false));
             Pair<Integer,List<WeightedEdge>> currentBestSolution = null;
             int index, u,v, global_u_v,global_v_u, both_global;
             int currScore = badSubs.getFirst().size() + badSubs.getSecond().size();
@@ -187,22 +204,17 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
 
                 weight = subVertexToWeight[u] * subVertexToWeight[v];
                 log.fine("Subgraph-Score: " + edge.getValue() + ", weight: " + weight);
-                currEdgeList.clear();
 
                 // if global: do global thing
                 // else: use the "next k" - strategy
                 if(p.isUseGlobal() && !first){
 
-                    currEdgeList.clear();
-                    global_u_v = computeEditScoreForEgde(u,v,weight,currEdgeList,true).getFirst();
+                    global_u_v = computeEditScoreForEgde(u,v,false,weight).getFirst();
                     log.fine("("+ u + ","  +v + ") global edit-score: " + global_u_v);
-                    currEdgeList.clear();
-                    global_v_u = computeEditScoreForEgde(v,u,weight,currEdgeList,true).getFirst();
+                    global_v_u = computeEditScoreForEgde(v,u,false,weight).getFirst();
                     log.fine("("+ v + ","  +u + ") global edit-score: "+ global_v_u);
-                    //currEdgeList.add(new WeightedPair<>(u,v,weight)); v,u already there
-                    both_global = (int) Math.round(computeEditScoreForEgde(u,v,weight,currEdgeList,true).getFirst() + weight * p.getWeightMultiplier());
+                    both_global = (int) Math.round(computeEditScoreForEgde(u,v,true,weight).getFirst() + weight * p.getWeightMultiplier());
                     log.fine("both global: "+ both_global);
-                    currEdgeList.clear();
 
                     boolean globallyFeasable = global_u_v < glSubcount ||
                             global_v_u < glSubcount || both_global < glSubcount;
@@ -232,7 +244,6 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
                     // normal lazy run with local edit scores.
                     TreeMap<Integer,List <Pair<Map.Entry<Edge,Integer>, Pair<WeightedEdge, WeightedEdge>> >> editsByLocalScore = new TreeMap<>();
                     Pair<Integer,Boolean> v_u_res, u_v_res, both_local;
-                    currEdgeList.clear(); // just one or two edge(s)
                     int firstIndex = -1;
                     boolean solutionFound = false;
                     LinkedList<Pair<WeightedEdge,WeightedEdge>> possibleSolutionEdits = new LinkedList<>();
@@ -257,17 +268,13 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
                         }
 
                         // compute local edit scores
-                        currEdgeList.clear();
-                        currEdgeList.addAll(allEdgesList);
-                        u_v_res = computeEditScoreForEgde(u, v, weight, currEdgeList, first);
+                        u_v_res = computeEditScoreForEgde(editedCounter, u, v, false, weight, allEdgesList, first);
                         log.fine("(" + u + "," + v + ") local edit-score: " + u_v_res.getFirst());
 
-                        currEdgeList.clear();
-                        currEdgeList.addAll(allEdgesList);
-                        v_u_res = computeEditScoreForEgde(v, u, weight, currEdgeList, first);
+                        v_u_res = computeEditScoreForEgde(editedCounter, v, u, false, weight, allEdgesList, first);
                         log.fine("(" + v + "," + u + ") local edit-score: " + v_u_res.getFirst());
 
-                        both_local = computeEditScoreForEgde(u, v, weight, currEdgeList, first);
+                        both_local = computeEditScoreForEgde(editedCounter, u, v, true, weight, allEdgesList, first);
                         int both_score = (int) Math.round(both_local.getFirst() + weight * p.getWeightMultiplier());
 
                         log.fine("Both local: " + both_local.getFirst());
@@ -286,8 +293,6 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
                             log.fine("Discarded: edge (" + u + "," + v + ") which doesn't improve the module");
                         }
 
-                        currEdgeList.clear();
-
 
                         // There could be several best solutions... Or  solutions better than editing both...
                         if (u_v_res.getSecond() || v_u_res.getSecond() || both_local.getSecond()) {
@@ -340,18 +345,16 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
                             if(!justOne) {
                                 if (one != null) {
                                     w1 = one.getWeight();
-                                    currGlobalScore = computeEditScoreForEgde(one.getFirst(), one.getSecond(), w1, currEdgeList, true).getFirst();
-                                    currEdgeList.clear();
+                                    currGlobalScore = computeEditScoreForEgde(one.getFirst(), one.getSecond(), false, w1).getFirst();
                                 }
                                 if (two != null) {
                                     w2 = two.getWeight();
-                                    currGlobalScore = computeEditScoreForEgde(two.getFirst(), two.getSecond(), w2, currEdgeList, true).getFirst();
+                                    currGlobalScore = computeEditScoreForEgde(two.getFirst(), two.getSecond(), false, w2).getFirst();
                                 }
                                 if (one != null && two != null) {
                                     // for both
-                                    currGlobalScore = computeEditScoreForEgde(one.getFirst(), one.getSecond(), w1, currEdgeList, true).getFirst();
+                                    currGlobalScore = computeEditScoreForEgde(one.getFirst(), one.getSecond(), true, w1).getFirst();
                                 }
-                                currEdgeList.clear();
                             }
 
 
@@ -402,11 +405,14 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
 
                             log.info(()->"Added best edit(s): " + addEdges + " edit-score: " + bestEditScore + ", weight: " + addEdges.getFirst().getWeight());
                             allEdgesList.addAll(addEdges);
+                            for(WeightedEdge added : addEdges){
+                                editedCounter.flip(added.getFirst(), added.getSecond());
+                            }
                             currScore = bestEditScore;
 
 
                             edit(allEdgesList);
-                            DirectedMD checkSizeMD = new DirectedMD(this, log, false);
+                            DirectedMD checkSizeMD = new DirectedMD(this, log, false, p.getMDEngine());
                             MDTree checkSizeTree = checkSizeMD.computeModularDecomposition();
                             int primeSize = checkSizeTree.getMaxPrimeSize();
                             log.info(()->"Size of prime modules:" + primeSize);
@@ -432,7 +438,7 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
                             } else if ( first && ((initialPrimeSize / p.getLazyRestart() > primeSize /p.getLazyRestart()) ||
                                     method.secondPrimeRun() && !p.isStopOnlyAtHardThreshold() && primeSize <= p.getBruteForceThreshold() )) {
                                 // exit point for brute force/ greedy ILP/ restart.
-                                log.fine("Subgraph-Tree: " + MDTree.beautify(checkSizeTree.toString()));
+                                log.fine(() -> "Subgraph-Tree: " + MDTree.beautify(checkSizeTree.toString()));
                                 if(method.secondPrimeRun() && primeSize <= p.getBruteForceThreshold()) {
                                     log.info(() -> "Size of prime modules now below " + p.getBruteForceThreshold() + ". Ready for second run.");
                                 } else {
@@ -529,7 +535,9 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
             CplexDiCographEditingSolver primeSolver = new CplexDiCographEditingSolver(
                     this, p, weightMatrix, log);
             log.info(()-> "Starting ILP solver.");
+            long ilpStart = System.nanoTime();
             primeSolver.solve(); // empty if unsuccessful!
+            Metrics.recordTime("Editing/ILP solve", System.nanoTime() - ilpStart);
             int bestVal = Integer.MAX_VALUE; // bestVal = (int) primeSolver.getBestObjectiveValue()
             for (int i = 0; i < primeSolver.getEditingDistances().size(); i++) {
                 int val = primeSolver.getEditingDistances().get(i);
@@ -550,7 +558,7 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
                         v = wedge.getFirst();
                     }
                     // this would be very bad for the heuristic. Does it happen? todo: grep the logs.
-                    if(bestVal == val && !edgeToCount.containsKey(new Edge(u,v)))
+                    if(bestVal == val && edgeScores.get(u,v) == 0)
                         log.severe("Optimal edge " + wedge + "has subgraph-score 0!");
                 }
             }
@@ -559,9 +567,9 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
             if(!primeSolver.getSolutionEdgeEdits().isEmpty()) {
                 log.info("MD Tree for CPlex subgraph solution:");
                 edit(primeSolver.getSolutionEdgeEdits().get(0));
-                DirectedMD subMD = new DirectedMD(this, log, false);
+                DirectedMD subMD = new DirectedMD(this, log, false, p.getMDEngine());
                 MDTree subTree = subMD.computeModularDecomposition();
-                log.info(MDTree.beautify(subTree.toString()));
+                log.info(() -> MDTree.beautify(subTree.toString()));
             } else {
                 log.severe("CPlex solver stopped without solution!");
             }
@@ -608,15 +616,14 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
                         edit(currEdgeList);
                         // subgraph checking for forbidden subgraphs is way more efficient for not-too large n.
                         if(useMD) {
-                            DirectedMD subMD = new DirectedMD(this, log, false);
+                            DirectedMD subMD = new DirectedMD(this, log, false, p.getMDEngine());
                             MDTree subTree = subMD.computeModularDecomposition();
                             if(subTree.getPrimeModulesBottomUp().isEmpty()){
                                 success = true;
-                                log.info("Tree: " + MDTree.beautify(subTree.toString()));
+                                log.info(() -> "Tree: " + MDTree.beautify(subTree.toString()));
                             }
                         } else {
-                        Pair<Map<BitSet,ForbiddenSubgraph>,Map<BitSet,ForbiddenSubgraph>> check = ForbiddenSubgraph.verticesToForbidden(this, new HashMap<>(),true,null);
-                        success = check.getFirst().isEmpty() && check.getSecond().isEmpty();
+                        success = getForbiddenCounter().getTotal() == 0;
                         }
                         if(success){
                             log.info(() -> method + ": Successful subgraph edit found: " + currEdgeList);
@@ -644,6 +651,8 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
 
 
                     count++;
+                    editsTried++;
+                    Metrics.count("Editing/Brute-force subsets");
                     timeOut = count % 100000 == 0 && timer.elapsedSeconds() > timeOutSecs;
                     if(timeOut)
                         break;
@@ -695,11 +704,9 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
             log.info(()->"Same score for (" + u + "," + v + "): " + u_v_score + " and (" + v + "," + u + "): " + v_u_score + ", weight: " + weight + ". Add edge with lower global score.");
 
             // resolve ties by using global.
-            LinkedList<WeightedEdge> currEdgeList = new LinkedList<>();
-            int global_u_v = computeEditScoreForEgde(u,v,weight,currEdgeList, true).getFirst();
+            int global_u_v = computeEditScoreForEgde(u,v,false,weight).getFirst();
             log.info(()->"("+ u + ","  +v + ") global edit-score: " + global_u_v);
-            currEdgeList.clear();
-            int global_v_u = computeEditScoreForEgde(v,u,weight,currEdgeList, true).getFirst();
+            int global_v_u = computeEditScoreForEgde(v,u,false,weight).getFirst();
             log.info(()->"("+ v + ","  +u + ") global edit-score: "+ global_v_u);
 
             editsByLocalScore.putIfAbsent(u_v_score,new LinkedList<>());
@@ -719,17 +726,19 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
         return ret;
     }
 
-    // high score means bad edit.
-    private Pair<Integer,Boolean> computeEditScoreForEgde(int u, int v, double weight, List<WeightedEdge> currEdgeList, boolean useWeights){
-        HashMap<Edge,Integer> edgeToCount = new HashMap<>();
-        currEdgeList.add(new WeightedEdge(u,v,weight));
-        edit(currEdgeList);
-        Pair<Map<BitSet,ForbiddenSubgraph>,Map<BitSet,ForbiddenSubgraph>> badSubs = ForbiddenSubgraph.verticesToForbidden(this, edgeToCount,false,null);
-        edit(currEdgeList);
-        int badScore = badSubs.getSecond().size() + badSubs.getFirst().size();
+    // high score means bad edit. Global: this graph edited by (u,v) and, if both, (v,u).
+    private Pair<Integer,Boolean> computeEditScoreForEgde(int u, int v, boolean both, double weight){
+        return computeEditScoreForEgde(getForbiddenCounter(), u, v, both, weight, Collections.emptyList(), true);
+    }
+
+    // high score means bad edit. The counter must be synced to this graph edited by edits, so one delta is enough.
+    private Pair<Integer,Boolean> computeEditScoreForEgde(ForbiddenSubgraphCounter counter, int u, int v, boolean both, double weight,
+                                                        List<WeightedEdge> edits, boolean useWeights){
+        editsTried++;
+        int badScore = counter.getTotal() + (both ? counter.deltaBoth(u,v) : counter.delta(u,v));
         boolean solved = badScore == 0;
         if(solved)
-            log.info(()->"Prime edited to cograph with: " + currEdgeList);
+            log.info(()->"Prime edited to cograph with: " + edits + " and (" + u + "," + v + ")" + (both ? " both ways" : ""));
         // todo: really???
         if( useWeights && weight > 1.5){
             badScore =  (int) Math.round( badScore + (p.getWeightMultiplier() * weight));
@@ -737,10 +746,21 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
         return new Pair<>(badScore,solved);
     }
 
+    // number of forbidden subgraphs, updated arc by arc instead of a new scan for every evaluated edit.
+    private ForbiddenSubgraphCounter getForbiddenCounter(){
+        if(forbiddenCounter == null){
+            forbiddenCounter = new ForbiddenSubgraphCounter(IntDigraph.fromJGraphT(this, false));
+        }
+        return forbiddenCounter;
+    }
+
     // ed(this, edges)
     private void edit(List<WeightedEdge> edgeList){
 
         for(WeightedEdge e : edgeList){
+            if(forbiddenCounter != null){
+                forbiddenCounter.flip(e.getFirst(), e.getSecond());
+            }
             if(containsEdge(e.getFirst(),e.getSecond())){
                 removeEdge(e.getFirst(),e.getSecond());
             } else {
@@ -783,7 +803,7 @@ public class PrimeSubgraph extends SimpleDirectedGraph<Integer,DefaultEdge> {
             throws InterruptedException,IOException,ImportException {
         currEdgeList.add(new WeightedEdge(u,v,weight));
         edit(currEdgeList);
-        DirectedMD subMD = new DirectedMD(this, log, false);
+        DirectedMD subMD = new DirectedMD(this, log, false, p.getMDEngine());
         MDTree subTree = subMD.computeModularDecomposition();
         edit(currEdgeList);
         return subTree.getNumPrimeChildren();
@@ -9,12 +9,15 @@ import org.jgrapht.io.ExportException;
 import org.jgrapht.io.ImportException;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
@@ -28,6 +31,7 @@ import java.util.TreeMap;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Handler;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import dicograph.Editing.ForbiddenSubgraph;
@@ -40,6 +44,7 @@ import dicograph.graphIO.SimpleMatrixExporter;
 import dicograph.graphIO.SimpleMatrixImporter;
 import dicograph.modDecomp.DirectedMD;
 import dicograph.modDecomp.MDTree;
+import dicograph.utils.Metrics;
 import dicograph.utils.Parameters;
 import dicograph.utils.VerySimpleFormatter;
 import ilog.concert.IloException;
@@ -171,6 +176,7 @@ public class Main {
 
                 log.info("All generated Graphs:");
                 log.info(allGraphs.toString().substring(0,allGraphs.length()-1));
+                log.info(Metrics.summary());
                 System.out.print("\u0007");
                 System.out.flush();
                 return;
@@ -225,10 +231,20 @@ public class Main {
         }
 
         if(command.isMDOnly()){
-            DirectedMD directedMD = new DirectedMD(importGraph, log, false);
+            DirectedMD directedMD = new DirectedMD(importGraph, log, false, command.getMDEngine());
+            directedMD.setExecutor(command.getMDExecutor());
+            directedMD.setCrossCheck(command.isMDCrossCheck());
             MDTree res = directedMD.computeModularDecomposition();
-            log.info(()->MDTree.beautify(res.toString()));
-            System.out.println(res.exportAsDot());
+            if(log.isLoggable(Level.INFO)) {
+                StringBuilder beautified = new StringBuilder();
+                res.writeBeautifiedTo(beautified);
+                log.info(beautified.toString());
+            }
+            // stream the DOT output instead of building it as one String
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+            res.writeDotTo(out);
+            out.write(System.lineSeparator());
+            out.flush();
 
         } else {
             MetaEditor editor = new MetaEditor(importGraph, command, log);
@@ -272,7 +288,7 @@ public class Main {
         double dist;
 
         MetaEditor testMeta = new MetaEditor(importGraph, p, log);
-        testMeta.setCotreeTriples(cotree.getTriples());
+        testMeta.setCotree(cotree);
         List<Solution> solutions = testMeta.computeSolutionsForMethods();
         if(!solutions.isEmpty()){
 
@@ -312,9 +328,15 @@ public class Main {
         // for metric:
         MDTree cotree = null;
         if(!p.isMDOnly()) {
-            DirectedMD cotreeMD = new DirectedMD(g_d, log, false);
+            DirectedMD cotreeMD = new DirectedMD(g_d, log, false, p.getMDEngine());
+            cotreeMD.setExecutor(p.getMDExecutor());
+            cotreeMD.setCrossCheck(p.isMDCrossCheck());
             cotree = cotreeMD.computeModularDecomposition();
-            log.info("Generated Cotree: " + MDTree.beautify(cotree.toString()));
+            if(log.isLoggable(Level.INFO)) {
+                StringBuilder beautified = new StringBuilder("Generated Cotree: ");
+                cotree.writeBeautifiedTo(beautified);
+                log.info(beautified.toString());
+            }
         }
 
         gen.disturbDicograph(g_d, nDisturb);
@@ -335,7 +357,9 @@ public class Main {
 
         } else {
             log.info("Started modular decomposition");
-            DirectedMD testMD = new DirectedMD(g_d, log, false);
+            DirectedMD testMD = new DirectedMD(g_d, log, false, p.getMDEngine());
+            testMD.setExecutor(p.getMDExecutor());
+            testMD.setCrossCheck(p.isMDCrossCheck());
             testMD.computeModularDecomposition();
             System.out.println("Finished modular decomposition. Log written to:");
         }
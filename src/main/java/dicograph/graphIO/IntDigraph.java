@@ -0,0 +1,224 @@
+package dicograph.graphIO;
+
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.SimpleDirectedGraph;
+
+import java.util.Arrays;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Immutable digraph on the vertices 0 to n-1 without loops. Out- and in-neighbours are stored as sorted arrays
+ * (compressed sparse rows), optionally with one bit row per vertex for O(1) arc queries.
+ * No object per arc, so this is the representation for the MD pipeline; JGraphT is only used at the I/O boundary.
+ */
+public final class IntDigraph {
+
+    private final int nVertices;
+    private final int[] outStart;
+    private final int[] outNeighbours;
+    private final int[] inStart;
+    private final int[] inNeighbours;
+    private final long[] adjacencyBits; // null or n rows of rowWords longs, bit v of row u set iff (u,v) arc
+    private final int rowWords;
+
+    private IntDigraph(int nVertices, int[] outStart, int[] outNeighbours, int[] inStart, int[] inNeighbours, boolean withBitRows) {
+        this.nVertices = nVertices;
+        this.outStart = outStart;
+        this.outNeighbours = outNeighbours;
+        this.inStart = inStart;
+        this.inNeighbours = inNeighbours;
+        if (withBitRows) {
+            rowWords = (nVertices + 63) >>> 6;
+            adjacencyBits = new long[nVertices * rowWords];
+            for (int u = 0; u < nVertices; u++) {
+                for (int e = outStart[u]; e < outStart[u + 1]; e++) {
+                    int v = outNeighbours[e];
+                    adjacencyBits[u * rowWords + (v >>> 6)] |= 1L << v;
+                }
+            }
+        } else {
+            rowWords = 0;
+            adjacencyBits = null;
+        }
+    }
+
+    /**
+     * @param nVertices number of vertices
+     * @param sources   source of each arc
+     * @param targets   target of each arc, same length as sources. No doubles or loops.
+     * @param withBitRows true for O(1) hasArc with n²/8 bytes extra memory; otherwise binary search.
+     */
+    public static IntDigraph fromArcs(int nVertices, int[] sources, int[] targets, boolean withBitRows) {
+        if (sources.length != targets.length) {
+            throw new IllegalArgumentException("Error: " + sources.length + " sources, but " + targets.length + " targets.");
+        }
+        int nArcs = sources.length;
+        int[] outStart = new int[nVertices + 1];
+        int[] inStart = new int[nVertices + 1];
+        for (int i = 0; i < nArcs; i++) {
+            if (sources[i] < 0 || sources[i] >= nVertices || targets[i] < 0 || targets[i] >= nVertices) {
+                throw new IllegalArgumentException("Error: arc (" + sources[i] + "," + targets[i] + ") not within 0 to " + (nVertices - 1));
+            }
+            if (sources[i] == targets[i]) {
+                throw new IllegalArgumentException("Error: loop at vertex " + sources[i]);
+            }
+            outStart[sources[i] + 1]++;
+            inStart[targets[i] + 1]++;
+        }
+        for (int v = 0; v < nVertices; v++) {
+            outStart[v + 1] += outStart[v];
+            inStart[v + 1] += inStart[v];
+        }
+
+        // two counting sort passes give sorted rows: arcs -> in-rows by target, in-rows by source -> out-rows.
+        int[] unsortedOut = new int[nArcs];
+        int[] fill = Arrays.copyOf(outStart, nVertices);
+        for (int i = 0; i < nArcs; i++) {
+            unsortedOut[fill[sources[i]]++] = targets[i];
+        }
+        int[] inNeighbours = new int[nArcs];
+        fill = Arrays.copyOf(inStart, nVertices);
+        for (int u = 0; u < nVertices; u++) {
+            for (int e = outStart[u]; e < outStart[u + 1]; e++) {
+                inNeighbours[fill[unsortedOut[e]]++] = u;
+            }
+        }
+        int[] outNeighbours = new int[nArcs];
+        fill = Arrays.copyOf(outStart, nVertices);
+        for (int v = 0; v < nVertices; v++) {
+            for (int e = inStart[v]; e < inStart[v + 1]; e++) {
+                outNeighbours[fill[inNeighbours[e]]++] = v;
+            }
+        }
+        return new IntDigraph(nVertices, outStart, outNeighbours, inStart, inNeighbours, withBitRows);
+    }
+
+    /**
+     * Adapter from JGraphT. The vertices must be numbered from 0 to n-1.
+     */
+    public static <E> IntDigraph fromJGraphT(Graph<Integer, E> graph, boolean withBitRows) {
+        int nVertices = graph.vertexSet().size();
+        int nArcs = graph.edgeSet().size();
+        int[] sources = new int[nArcs];
+        int[] targets = new int[nArcs];
+        int i = 0;
+        for (E edge : graph.edgeSet()) {
+            sources[i] = graph.getEdgeSource(edge);
+            targets[i] = graph.getEdgeTarget(edge);
+            i++;
+        }
+        return fromArcs(nVertices, sources, targets, withBitRows);
+    }
+
+    /**
+     * @return the same graph with bit rows, if it has none yet.
+     */
+    public IntDigraph withBitRows() {
+        if (adjacencyBits != null) {
+            return this;
+        }
+        return new IntDigraph(nVertices, outStart, outNeighbours, inStart, inNeighbours, true);
+    }
+
+    /**
+     * Adapter to JGraphT, i.e. for export.
+     */
+    public SimpleDirectedGraph<Integer, DefaultEdge> toJGraphT() {
+        SimpleDirectedGraph<Integer, DefaultEdge> ret = new SimpleDirectedGraph<>(DefaultEdge.class);
+        for (int v = 0; v < nVertices; v++) {
+            ret.addVertex(v);
+        }
+        for (int u = 0; u < nVertices; u++) {
+            for (int e = outStart[u]; e < outStart[u + 1]; e++) {
+                ret.addEdge(u, outNeighbours[e]);
+            }
+        }
+        return ret;
+    }
+
+    public int getnVertices() {
+        return nVertices;
+    }
+
+    public int getnArcs() {
+        return outNeighbours.length;
+    }
+
+    public boolean hasBitRows() {
+        return adjacencyBits != null;
+    }
+
+    public boolean hasArc(int source, int target) {
+        if (adjacencyBits != null) {
+            return (adjacencyBits[source * rowWords + (target >>> 6)] & (1L << target)) != 0;
+        }
+        return Arrays.binarySearch(outNeighbours, outStart[source], outStart[source + 1], target) >= 0;
+    }
+
+    public int outDegree(int v) {
+        return outStart[v + 1] - outStart[v];
+    }
+
+    public int inDegree(int v) {
+        return inStart[v + 1] - inStart[v];
+    }
+
+    // Iteration: for (int e = g.outBegin(v); e < g.outEnd(v); e++) g.outNeighbour(e)
+
+    public int outBegin(int v) {
+        return outStart[v];
+    }
+
+    public int outEnd(int v) {
+        return outStart[v + 1];
+    }
+
+    public int outNeighbour(int e) {
+        return outNeighbours[e];
+    }
+
+    public int inBegin(int v) {
+        return inStart[v];
+    }
+
+    public int inEnd(int v) {
+        return inStart[v + 1];
+    }
+
+    public int inNeighbour(int e) {
+        return inNeighbours[e];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("IntDigraph(n=").append(nVertices).append(", arcs=[");
+        for (int u = 0; u < nVertices; u++) {
+            for (int e = outStart[u]; e < outStart[u + 1]; e++) {
+                builder.append('(').append(u).append(',').append(outNeighbours[e]).append("), ");
+            }
+        }
+        if (outNeighbours.length > 0) {
+            builder.setLength(builder.length() - 2);
+        }
+        return builder.append("])").toString();
+    }
+}
@@ -0,0 +1,78 @@
+package dicograph.modDecomp;
+
+import java.io.IOException;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Formats the bracket form of a tree while it is written, see MDTree.beautify: each '(' starts an indented line,
+ * a ')' following a ')' gets its own line.
+ */
+final class BeautifyingAppendable implements Appendable {
+
+    private final Appendable out;
+    private int offsetMultiplier = 0;
+    private char previous = '(';
+
+    BeautifyingAppendable(Appendable out) {
+        this.out = out;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) throws IOException {
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            append(csq.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+        if (c == '(') {
+            out.append('\n');
+            addOffset(offsetMultiplier);
+            out.append(c);
+            offsetMultiplier++;
+        } else if (c == ')') {
+            offsetMultiplier--;
+            // new line only for modules, not for vertices.
+            if (previous == ')') {
+                out.append('\n');
+                addOffset(offsetMultiplier);
+            }
+            out.append(c);
+        } else {
+            out.append(c);
+        }
+        previous = c;
+        return this;
+    }
+
+    private void addOffset(int times) throws IOException {
+        for (int i = 0; i < times; i++) {
+            out.append("  ");
+        }
+    }
+}
@@ -14,16 +14,23 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import dicograph.graphIO.IntDigraph;
 import dicograph.utils.SortAndCompare;
+import dicograph.utils.Metrics;
+import dicograph.utils.PhaseEvents;
 import dicograph.utils.TimerLog;
 /*
  *   This source file is part of the program for editing directed graphs
@@ -50,25 +57,35 @@ import dicograph.utils.TimerLog;
 public class DirectedMD {
 
     private final static int overlapCodeBufferLimit = 250; // max n for size of text buffer in the C code (1000)
-    private final static String overlapTransferFile = "OverlapComponentProg/doNotDelete.txt";
+    private final static int bitRowLimit = 8192; // max n for O(1) arc queries with n² bits
 
     final SimpleDirectedGraph<Integer, DefaultEdge> inputGraph;
+    IntDigraph digraph; // compact copy of inputGraph used by the algorithm
     final Logger log;
     private final TimerLog timeLog;
     final int nVertices;
     private SimpleGraph<Integer, DefaultEdge> G_s;
     private SimpleGraph<Integer, DefaultEdge> G_d;
+    private HStructure H;
 
     private final boolean debugMode; // false for max speed, true for nicely sorted vertices and module verification
+    private final MDEngine engine;
+    private Executor executor; // null: T(G_d) and T(G_s) are computed one after the other
+    private boolean crossCheck; // debug: compare with the results of the C/C++ programs
 
 
     public DirectedMD(SimpleDirectedGraph<Integer, DefaultEdge> input, Logger logger, boolean debugMode){
+        this(input, logger, debugMode, MDEngine.EXTERNAL);
+    }
+
+    public DirectedMD(SimpleDirectedGraph<Integer, DefaultEdge> input, Logger logger, boolean debugMode, MDEngine engine){
 
         inputGraph = input;
         log = logger;
-        timeLog = new TimerLog(log, Level.FINER);
+        timeLog = new TimerLog(log, Level.FINER, "DirectedMD");
         nVertices = input.vertexSet().size();
         this.debugMode = debugMode;
+        this.engine = engine;
 
         // vertices have the numbers from 0 to n-1. Verify that in debug mode.
         if(debugMode){
@@ -88,11 +105,11 @@ public class DirectedMD {
     // printgraph - 0
     // printcc    - 1
     // check      - 0
-    private static ArrayList<Integer> dahlhausProcessDelegator(Logger log)
+    private static ArrayList<Integer> dahlhausProcessDelegator(File transferFile, Logger log)
             throws IOException {
         List<String> command = new ArrayList<>();
         command.add("./OverlapComponentProg/main"); // ./OverlapComponentProg/main
-        command.add(overlapTransferFile);
+        command.add(transferFile.getPath());
         ArrayList<Integer> ret = new ArrayList<>();
 
         ProcessBuilder processBuilder = new ProcessBuilder(command);
@@ -117,65 +134,96 @@ public class DirectedMD {
         return ret;
     }
 
-    public MDTree computeModularDecomposition() throws InterruptedException, IOException, ImportException {
-
-        log.finer("init md of graph: " + inputGraph.toString());
+    // uses M.Rao's Dahlhaus algorithm, for crossCheck. Only for n <= overlapCodeBufferLimit.
+    private HashMap<Integer, BitSet> overlapComponentsFromDahlhausProcess(ArrayList<BitSet> allNontrivModules) throws IOException {
 
+        StringBuilder overlapInput = new StringBuilder();
 
-        // Step 1: Find G_s, G_d and H
+        // Since the singletons and V itself will never overlap another module, I can exclude them here and only consider the nontrivial modules
+        // The Program takes vertices separated by " " in one line, ended by a "-1".
+        allNontrivModules.forEach(module -> {
+            module.stream().forEach(vertexNo ->
+                    overlapInput.append(vertexNo).append(" "));
+            overlapInput.append("-1\n");
+        });
 
-        // G_d: undirected graph s.t. {u,v} in E_d iff both (u,v) and (v,u) in E
-        G_d = new SimpleGraph<>(DefaultEdge.class);
-        inputGraph.vertexSet().forEach( G_d::addVertex );
+        log.finer(() -> "Input for Dahlhaus algorith:\n" + overlapInput);
+        // I need to make sure that the program breaks if the char-Buffer would overflow
+        if (nVertices > overlapCodeBufferLimit)
+            throw new IndexOutOfBoundsException("Error: adapt the size of the char buff[" + 1000 +"] in OverlapComponentProg/main.c and recompile.");
 
-        for (DefaultEdge edge : inputGraph.edgeSet()) {
-            int source = inputGraph.getEdgeSource(edge);
-            int target = inputGraph.getEdgeTarget(edge);
-            if (inputGraph.containsEdge(target, source)) {
-                G_d.addEdge(source, target);
+        // own file per call, verifications might run concurrently (-vthreads).
+        File dahlhausFile = File.createTempFile("overlapInput", ".txt");
+        ArrayList<Integer> overlapComponentNumbers;
+        try {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(dahlhausFile))) {
+                writer.write(overlapInput.toString());
+            }
+            overlapComponentNumbers = dahlhausProcessDelegator(dahlhausFile, log);
+        } finally {
+            if (!dahlhausFile.delete()) {
+                log.warning("Could not delete " + dahlhausFile);
             }
         }
-        log.finer("  G_d of digraph: " + G_d);
-
-        // G_s: undirected graph s.t. {u,v} in E_s iff (u,v) in E or (v,u) in E
-        G_s = new SimpleGraph<>(DefaultEdge.class);
-        inputGraph.vertexSet().forEach( G_s::addVertex );
-        for (DefaultEdge edge : inputGraph.edgeSet()) {
-            int source = inputGraph.getEdgeSource(edge);
-            int target = inputGraph.getEdgeTarget(edge);
-            if (!G_s.containsEdge(source, target)) {
-                G_s.addEdge(source, target);
+
+        HashMap<Integer, BitSet> overlapComponents = new HashMap<>();
+        for(int i = 0; i< overlapComponentNumbers.size(); i++){
+
+            int componentNr = overlapComponentNumbers.get(i);
+            if (overlapComponents.containsKey(componentNr)) {
+                overlapComponents.get(componentNr).or(allNontrivModules.get(i));
+            } else {
+                overlapComponents.put(componentNr, (BitSet) allNontrivModules.get(i).clone()); // the modules are keys.
             }
         }
+        return overlapComponents;
+    }
+
+    public MDTree computeModularDecomposition() throws InterruptedException, IOException, ImportException {
+
+        log.finer(() -> "init md of graph: " + inputGraph.toString());
+        Metrics.record("DirectedMD/vertices", nVertices);
+        Object decompositionEvent = PhaseEvents.beginDecomposition(nVertices);
+        digraph = IntDigraph.fromJGraphT(inputGraph, nVertices <= bitRowLimit);
 
-        log.finer("  G_s of digraph: " + G_s);
 
+        // Step 1: Find G_s, G_d and H
 
         // H: symmetric 2-structure with
         //    E_H(u,v) = 0 if {u,v} non-edge (i.e. non-edge in both G_s and G_d)
         //    E_H(u,v) = 1 if {u,v} edge (i.e. edge in both G_s and G_d)
         //    E_H(u,v) = 2 if (u,v) or (v,u) simple arc (i.e. edge in G_s but not G_d)
-
-        timeLog.logTime("Init of G_d and G_s");
-        log.finer("computing md for G_d:");
+        H = HStructure.of(digraph);
 
         // Step 2: T(G_d) and T(G_s) with algorithm for undirected graphs
 
-        // without null uses Tedder's MD
-        MDTree treeForG_d = new MDTree(G_d, null, debugMode, log);
+        G_d = buildG_d();
+        G_s = buildG_s();
+        timeLog.logTime("Init of G_d and G_s");
+        MDTree treeForG_d;
+        MDTree treeForG_s;
+        if (executor == null) {
+            log.finer("computing md for G_d:");
+            treeForG_d = computeUndirectedMD(G_d);
+            log.finer("computing md for G_s:");
+            treeForG_s = computeUndirectedMD(G_s);
+        } else {
+            // both are independent until step 3. G_d and G_s are only read.
+            CompletableFuture<MDTree> futureForG_d = CompletableFuture.supplyAsync(() -> computeUndirectedMDUnchecked(G_d), executor);
+            CompletableFuture<MDTree> futureForG_s = CompletableFuture.supplyAsync(() -> computeUndirectedMDUnchecked(G_s), executor);
+            treeForG_d = join(futureForG_d);
+            treeForG_s = join(futureForG_s);
+        }
 //        if(treeForG_d.removeDummies()){
 //            log.warning("Removed dummy primes for G_d");
 //        }
-        log.finer("computing md for G_s:");
-
-        MDTree treeForG_s = new MDTree(G_s, null, debugMode, log);
 //        if(treeForG_s.removeDummies()){
 //            log.warning("Removed dummy primes for G_s");
 //        }
         timeLog.logTime("MD for G_d and G_s");
-        log.finer("md for G_d:\n" + MDTree.beautify(treeForG_d.toString()));
+        log.finer(() -> "md for G_d:\n" + MDTree.beautify(treeForG_d.toString()));
         //log.finer("DOT for G_d:\n" + treeForG_d.exportAsDot());
-        log.finer("md for G_s:\n" + MDTree.beautify(treeForG_s.toString()));
+        log.finer(() -> "md for G_s:\n" + MDTree.beautify(treeForG_s.toString()));
         //log.finer("DOT for G_s:\n" + treeForG_s.exportAsDot());
 
         // Step 3: Find T(H) = T(G_s) Λ T(G_d)
@@ -186,7 +234,7 @@ public class DirectedMD {
         // not yet the "true" node-type, just a reference to 0/1/2-completeness.
         treeForH.computeAllNodeTypes(this);
         timeLog.logTime("End of step 3 - Inclusion Tree");
-        log.finer("Inclusion Tree with computed types: " + MDTree.beautify(treeForH.toString()));
+        log.finer(() -> "Inclusion Tree with computed types: " + MDTree.beautify(treeForH.toString()));
 
 
         // Step 4: At each O-complete and 1-complete node X of T(H), order the children s.t.
@@ -203,20 +251,31 @@ public class DirectedMD {
         ArrayList<PartitiveFamilyLeafNode> trueLeafOrder =  new ArrayList<>(nVertices);
         treeForH.getLeavesInLeftToRightOrder( trueLeafOrder );
 
+        // only needed for the cross-check and the log
         StringBuilder leafNumbers = new StringBuilder();
-        for(int i = 0; i < trueLeafOrder.size(); i++){
-            PartitiveFamilyLeafNode l = trueLeafOrder.get(i);
-            leafNumbers.append(l.getVertex());
-            if(i != nVertices-1)
-                leafNumbers.append(", ");
+        if (crossCheck || log.isLoggable(Level.FINER)) {
+            for (int i = 0; i < trueLeafOrder.size(); i++) {
+                PartitiveFamilyLeafNode l = trueLeafOrder.get(i);
+                leafNumbers.append(l.getVertex());
+                if (i != nVertices - 1)
+                    leafNumbers.append(", ");
+            }
         }
         log.finer(() ->"Leaves ordered as factorizing permutation: " + leafNumbers);
-        log.finer("Reordered Tree: " + MDTree.beautify(treeForH.toString()));
+        log.finer(() -> "Reordered Tree: " + MDTree.beautify(treeForH.toString()));
 
 
-        // get the MD Tree from C++
-        MDTree finalTree = new MDTree(inputGraph, leafNumbers.toString(), true, log);
-        finalTree.getStrongModulesBool(nVertices);
+        ArrayList<Integer> factPerm = new ArrayList<>(nVertices);
+        trueLeafOrder.forEach(leaf -> factPerm.add(leaf.getVertex()));
+        MDTree finalTree = new MDTree(digraph, factPerm);
+        if (crossCheck) {
+            MDTree expected = new MDTree(inputGraph, leafNumbers.toString(), true, log);
+            if (!Arrays.equals(finalTree.toCanonicalBinary(), expected.toCanonicalBinary())) {
+                throw new IllegalStateException("Error: MD tree from the factorizing permutation\n" + finalTree +
+                        "\nbut FP_to_DMD computed\n" + expected);
+            }
+        }
+        ModuleIntervals finalModules = finalTree.getStrongModuleIntervals(nVertices);
 
 
         // Step 6 b): Deletion of weak modules and recovering of merged modules - should happen in C++
@@ -224,7 +283,7 @@ public class DirectedMD {
 //            log.warning("Removed dummy primes/ weak orders!");
 //        }
         timeLog.logTime("MD Tree from FP");
-        log.finer("Final Tree: " + MDTree.beautify(finalTree.toString()));
+        log.finer(() -> "Final Tree: " + MDTree.beautify(finalTree.toString()));
 
 
         if (debugMode) {
@@ -235,28 +294,136 @@ public class DirectedMD {
                 throw new IllegalStateException(msg);
             }
         }
+        if (decompositionEvent != null) {
+            int nPrimes = 0;
+            for (int i = 0; i < finalModules.size(); i++) {
+                if (((MDTreeNode) finalModules.nodeAt(i)).getType() == MDNodeType.PRIME) {
+                    nPrimes++;
+                }
+            }
+            PhaseEvents.endDecomposition(decompositionEvent, finalModules.size(), nPrimes);
+        }
 
         return finalTree;
 
     }
 
 
-    int getEdgeValueForH(int u, int v) {
+    /**
+     * Computes T(G_d) and T(G_s) concurrently on the given executor, e.g. the common fork-join pool.
+     * @param executor null for sequential computation (default)
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
 
-        boolean inG_s = G_s.containsEdge(u, v);
-        boolean inG_d = G_d.containsEdge(u, v);
+    /**
+     * Debug option: also runs the C/C++ programs and throws an IllegalStateException if their results differ.
+     * The programs must be built, the overlap component program only takes n <= 250.
+     */
+    public void setCrossCheck(boolean crossCheck) {
+        this.crossCheck = crossCheck;
+    }
+
+    // G_d: undirected graph s.t. {u,v} in E_d iff both (u,v) and (v,u) in E
+    private SimpleGraph<Integer, DefaultEdge> buildG_d() {
+        SimpleGraph<Integer, DefaultEdge> graph = new SimpleGraph<>(DefaultEdge.class);
+        inputGraph.vertexSet().forEach( graph::addVertex );
 
-        if (!inG_d && !inG_s) {
-            return 0;
-        } else if (inG_d && inG_s) {
-            return 1;
-        } else if (!inG_d && inG_s) {
-            return 2;
+        for (int source = 0; source < nVertices; source++) {
+            for (int e = digraph.outBegin(source); e < digraph.outEnd(source); e++) {
+                int target = digraph.outNeighbour(e);
+                if (source < target && digraph.hasArc(target, source)) {
+                    graph.addEdge(source, target);
+                }
+            }
+        }
+        log.finer(() -> "  G_d of digraph: " + graph);
+        return graph;
+    }
+
+    // G_s: undirected graph s.t. {u,v} in E_s iff (u,v) in E or (v,u) in E
+    private SimpleGraph<Integer, DefaultEdge> buildG_s() {
+        SimpleGraph<Integer, DefaultEdge> graph = new SimpleGraph<>(DefaultEdge.class);
+        inputGraph.vertexSet().forEach( graph::addVertex );
+        for (int source = 0; source < nVertices; source++) {
+            for (int e = digraph.outBegin(source); e < digraph.outEnd(source); e++) {
+                int target = digraph.outNeighbour(e);
+                // the reverse arc adds the edge if source > target
+                if (source < target || !digraph.hasArc(target, source)) {
+                    graph.addEdge(source, target);
+                }
+            }
+        }
+        log.finer(() -> "  G_s of digraph: " + graph);
+        return graph;
+    }
+
+    private MDTree computeUndirectedMDUnchecked(SimpleGraph<Integer, DefaultEdge> graph) {
+        try {
+            return computeUndirectedMD(graph);
+        } catch (IOException | ImportException | InterruptedException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    // rethrows the checked exceptions of computeUndirectedMD
+    private static MDTree join(CompletableFuture<MDTree> future) throws IOException, ImportException, InterruptedException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ImportException) {
+                throw (ImportException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private MDTree computeUndirectedMD(SimpleGraph<Integer, DefaultEdge> graph) throws IOException, ImportException, InterruptedException {
+        if (engine == MDEngine.EXTERNAL) {
+            // with null as factorizing permutation, the C++ program computes the undirected MD
+            return new MDTree(graph, null, debugMode, log);
+        } else if (engine == MDEngine.WORKER) {
+            return MDTree.fromWorker(graph);
         } else {
-            throw new IllegalStateException("Error: illegal state in H for edge (" + u + ":" + v + ")");
+            // Tedder's MD
+            MDTree tree = new MDTree(graph);
+            if (crossCheck) {
+                MDTree expected = new MDTree(graph, null, debugMode, log);
+                if (!Arrays.equals(tree.toCanonicalBinary(), expected.toCanonicalBinary())) {
+                    throw new IllegalStateException("Error: MD tree from RecSubProblem\n" + tree +
+                            "\nbut MD/build/mod_dec computed\n" + expected);
+                }
+            }
+            return tree;
         }
     }
 
+    private void crossCheckOverlapComponents(HashMap<Integer, BitSet> overlapComponents, ArrayList<BitSet> allNontrivModules) throws IOException {
+        if (nVertices > overlapCodeBufferLimit) {
+            log.warning(() -> "Overlap components not cross-checked, the C program only takes n <= " + overlapCodeBufferLimit);
+            return;
+        }
+        HashSet<BitSet> expected = new HashSet<>(overlapComponentsFromDahlhausProcess(allNontrivModules).values());
+        if (!expected.equals(new HashSet<>(overlapComponents.values()))) {
+            throw new IllegalStateException("Error: overlap components " + overlapComponents.values() +
+                    ", but the C program computed " + expected);
+        }
+    }
+
+    int getEdgeValueForH(int u, int v) {
+        return H.get(u, v);
+    }
+
 
     private PartitiveFamilyTree intersectPartitiveFamiliesOf(MDTree of_Gs_T_s, MDTree of_Gd_T_g) throws InterruptedException,IOException{
 
@@ -312,53 +479,16 @@ public class DirectedMD {
         ArrayList<BitSet> allNontrivModules= new ArrayList<>(nontrivModulesTemp);
         SortAndCompare.bucketSortBySize(allNontrivModules,false);
 
-        StringBuilder overlapInput = new StringBuilder();
-
-        // Since the singletons and V itself will never overlap another module, I can exclude them here and only consider the nontrivial modules
-        // The Program takes vertices separated by " " in one line, ended by a "-1".
-        allNontrivModules.forEach(module -> {
-            module.stream().forEach(vertexNo ->
-                    overlapInput.append(vertexNo).append(" "));
-            overlapInput.append("-1\n");
-        });
         timeLog.logTime("Init step 3");
 
-
-        // 1.) use M.Rao's Dahlhaus algorithm to compute the overlap components (Bound: |M| <= 4m + 6n)
-        log.finer("Input for Dahlhaus algorith:\n" + overlapInput);
-        File dahlhausFile = new File(overlapTransferFile);
-
-        // Try with ressources
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(dahlhausFile))){
-            //System.out.println(dahlhausFile.getCanonicalPath());
-            writer.write(overlapInput.toString());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        // I need to make sure that the program breaks if the char-Buffer would overflow // todo: edit C code to get rid of this.
-        if (nVertices > overlapCodeBufferLimit)
-            throw new IndexOutOfBoundsException("Error: adapt the size of the char buff[" + 1000 +"] in OverlapComponentProg/main.c and recompile.");
-
-        ArrayList<Integer> overlapComponentNumbers = dahlhausProcessDelegator(log);
-
-        // Moooment. Die Knoten im Overlap-Graph sind:
-        // 1. Die Singleton-Subsets
-        // 2. V
-        // 3. Die oben berechneten Module
-
+        // 1.) compute the overlap components (Bound: |M| <= 4m + 6n)
         // Retrieves the overlap components and computes UNION for same numbers
-        HashMap<Integer, BitSet> overlapComponents = new HashMap<>();
-        for(int i = 0; i< overlapComponentNumbers.size(); i++){
-
-            int componentNr = overlapComponentNumbers.get(i);
-            if (overlapComponents.containsKey(componentNr)) {
-                overlapComponents.get(componentNr).or(allNontrivModules.get(i));
-            } else {
-                overlapComponents.put(componentNr, allNontrivModules.get(i));
-            }
-        }
+        HashMap<Integer, BitSet> overlapComponents =
+                new OverlapComponents(allNontrivModules, of_Gs_T_s, of_Gd_T_g, nVertices).getComponents();
         timeLog.logTime("Overlap components");
+        if (crossCheck) {
+            crossCheckOverlapComponents(overlapComponents, allNontrivModules);
+        }
 
         // What exacty _are_ the overlap Components now? number -> module
         // what do I want: number -> set with all vertices. therefore:
@@ -382,7 +512,7 @@ public class DirectedMD {
         PartitiveFamilyLeafNode[] leafNodes = overlapInclusionTree.createInclusionTreeFromBitsets(overlapComponents.values(),log,nVertices);
         timeLog.logTime("Overlap inclusion tree");
         log.finer(() -> MDTree.beautify(overlapInclusionTree.toString()));
-        HashMap<BitSet, RootedTreeNode> bitsetToOverlapTreenNode = overlapInclusionTree.getModuleToTreenode();
+        List<RootedTreeNode> overlapTreeNodes = overlapInclusionTree.getInnerNodes();
 
         // 4.) Algorithm 1: compute Ü(T_s,T_g) = A* \cap B*;
         //     A* = {X | X ∈ σ(T_s, T_g) AND X node in T_s OR P_a not prime in T_s}, B analog
@@ -394,12 +524,12 @@ public class DirectedMD {
 
 
         log.finer("Computing nodes with complete Parent for Tree T_s of G_s");
-        HashMap<RootedTreeNode, BitSet> elementsOfA = computeNodesWithCompleteParent(bitsetToOverlapTreenNode,
+        HashMap<RootedTreeNode, BitSet> elementsOfA = computeNodesWithCompleteParent(overlapTreeNodes,
                 true, leafNodes, elementOfAToP_a, strongModulesBoolT_s, of_Gs_T_s);
 
         // Reinitialize and Compute P_b
         log.finer("Computing nodes with complete Parent for Tree T_g of G_d");
-        HashMap<RootedTreeNode, BitSet> elementsOfB = computeNodesWithCompleteParent(bitsetToOverlapTreenNode,
+        HashMap<RootedTreeNode, BitSet> elementsOfB = computeNodesWithCompleteParent(overlapTreeNodes,
                 false, leafNodes,elementOfBToP_b, strongModulesBoolT_d, of_Gd_T_g);
 
 
@@ -412,7 +542,7 @@ public class DirectedMD {
                 intersectionOfAandB.put(node, entry.getValue());
             }
         }
-        log.finer("Intersection of A* and B*: " + intersectionOfAandB.values());
+        log.finer(() -> "Intersection of A* and B*: " + intersectionOfAandB.values());
 
         // Now, the paper suggests computing P_a and P_b for each element X \in Ü.
         // However, this has already been done in the previous step. It is either:
@@ -448,7 +578,7 @@ public class DirectedMD {
 
         }
         timeLog.logTime("Equivalence Classes");
-        log.finer("Equivalence Classes: " + equivalenceClassesR_U.values());
+        log.finer(() -> "Equivalence Classes: " + equivalenceClassesR_U.values());
 
 
         // 6. ) the set \mathcal S(T_s, T_g) - which is the set Family of H's MD-Tree:
@@ -476,9 +606,9 @@ public class DirectedMD {
      *
      * Ü(T_s,T_g) = A* \cap B*;
      *
-     * @param bitsetToOverlapTreenNode the entries of σ(T_s,T_g)
+     * @param overlapTreeNodes the entries of σ(T_s,T_g)
      */
-    private HashMap<RootedTreeNode, BitSet> computeNodesWithCompleteParent(Map<BitSet, RootedTreeNode> bitsetToOverlapTreenNode, boolean isT_s, PartitiveFamilyLeafNode[] leavesOfOverlapTree,
+    private HashMap<RootedTreeNode, BitSet> computeNodesWithCompleteParent(List<RootedTreeNode> overlapTreeNodes, boolean isT_s, PartitiveFamilyLeafNode[] leavesOfOverlapTree,
                                                                            Map<RootedTreeNode, RootedTreeNode> elementOfAToP_a, Map<BitSet, RootedTreeNode> strongModules, MDTree mdTree) {
 
         // note: usually only using the nodes not Bitsets: Except for the leavesOf...
@@ -499,19 +629,19 @@ public class DirectedMD {
 
         // outer loop: iterate over all inner nodes of σ(T_s,T_g)
         // need to get the P_a for every node S in σ that is not directly in T_s -> lca and check if not prime.
-        for (Map.Entry<BitSet, RootedTreeNode> setEntryOfSigma : bitsetToOverlapTreenNode.entrySet()) {
+        for (RootedTreeNode nodeOfSigma : overlapTreeNodes) {
 
-            BitSet bits = setEntryOfSigma.getKey();
+            BitSet bits = nodeOfSigma.getVertices();
 
             // check if already a node of T_s or T_g -> done.
             MDTreeNode easyNode = (MDTreeNode) strongModules.get(bits);
             if (easyNode != null) {
-                log.finer(() -> logPrefix + "Added: " + setEntryOfSigma);
+                log.finer(() -> logPrefix + "Added: " + bits);
                 log.finer(() -> "   as it is node in MD Tree.");
-                elementsOfA.put(setEntryOfSigma.getValue(), bits);
+                elementsOfA.put(nodeOfSigma, bits);
                 // if not a prime, possibly also in equiv class:
                 if (easyNode.getType().isDegenerate()) {
-                    elementOfAToP_a.put(setEntryOfSigma.getValue(), easyNode);
+                    elementOfAToP_a.put(nodeOfSigma, easyNode);
                 }
             } else {
 
@@ -567,7 +697,7 @@ public class DirectedMD {
                     throw new IllegalStateException("Number of max. members: " + maximumMembers.size() + ", entries: " + maximumMembers);
                 } else {
                     // compute the LCA of all maximum members and check if it is complete.
-                    // LCA can be found in O(h), h height of the tree, at least.
+                    // LCA in O(|members|) with the LCA index of the tree.
                     MDTreeNode lca;
                     if(maximumMembers.size() == nVertices){
                         lca = (MDTreeNode) mdTree.root;
@@ -575,15 +705,15 @@ public class DirectedMD {
                         lca = (MDTreeNode) mdTree.getLCA(new ArrayList<>(maximumMembers));
                     }
                     if (lca == null || lca.hasNoChildren()) {
-                        throw new IllegalStateException("LCA: " + lca + " invalid!\nFor: " + setEntryOfSigma);
+                        throw new IllegalStateException("LCA: " + lca + " invalid!\nFor: " + bits);
                     } else if (lca.getType().isDegenerate()) {
 
-                        elementsOfA.put(setEntryOfSigma.getValue(), setEntryOfSigma.getKey());
-                        elementOfAToP_a.put(setEntryOfSigma.getValue(), lca);
-                        log.finer(() -> logPrefix + "Added: " + setEntryOfSigma);
+                        elementsOfA.put(nodeOfSigma, bits);
+                        elementOfAToP_a.put(nodeOfSigma, lca);
+                        log.finer(() -> logPrefix + "Added: " + bits);
                         log.finer(() -> "   with complete LCA: " + lca);
                     } else {
-                        log.finer(() -> logPrefix + "Discarded: " + setEntryOfSigma);
+                        log.finer(() -> logPrefix + "Discarded: " + bits);
                         log.finer(() -> "   with prime LCA: " + lca);
                         // neither in P_a: "...and neither of these nodes is prime".
                     }
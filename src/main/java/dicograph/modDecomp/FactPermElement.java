@@ -181,6 +181,12 @@ class FactPermElement extends RootedTreeNode {
 	}
 	
 	
+	// own string representation, see toString()
+	@Override
+	boolean appendHead(Appendable out) {
+		return false;
+	}
+
 	/* 
 	 * Returns a string representation of the given element consisting of the element's
 	 * index, followed by its neighbours, and then the subtree it represents.
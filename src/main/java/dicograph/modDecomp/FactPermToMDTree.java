@@ -0,0 +1,432 @@
+package dicograph.modDecomp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import dicograph.graphIO.IntDigraph;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Computes the MD tree of a digraph from a factorizing permutation, i.e. every strong module is a factor.
+ * Replaces the C++ program FP_to_DMD.
+ *
+ * 1. For each pair of neighbours (x_i, x_i+1) in the permutation, compute the leftmost and rightmost vertex that
+ *    splits them. An interval [a,b] is a module iff no splitter of its pairs lies outside.
+ * 2. Sweep over the right end b and keep a stack of possible left ends to get H(i), the smallest interval module
+ *    containing x_i and x_i+1. It is either the strong module N_i = lca(x_i, x_i+1) or a union of its children if
+ *    N_i is degenerate.
+ * 3. The overlap components of these intervals are the strong modules. Nodes are merged while building the
+ *    inclusion tree, then the node types are computed and weak modules are merged into their parents.
+ *
+ * Runtime: O(n log n + m) for the intervals, the node types take O(sum of degrees of the representatives).
+ */
+class FactPermToMDTree {
+
+    private final int nVertices;
+    private final int[] perm; // position -> vertex
+    private final IntDigraph graph;
+
+    // candidates for strong modules
+    private static class Candidate {
+        int start;
+        int end;
+        boolean merged; // union of several overlapping intervals -> degenerate
+        boolean dissolved; // merged into its parent
+        ArrayList<Candidate> children = new ArrayList<>();
+        MDTreeNode treeNode;
+        int[] representatives; // one vertex per child of the tree node
+
+        Candidate(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    FactPermToMDTree(IntDigraph graph, List<Integer> factPerm) {
+
+        nVertices = graph.getnVertices();
+        if (factPerm.size() != nVertices) {
+            throw new IllegalArgumentException("Factorizing permutation has " + factPerm.size() + " entries, but the graph " + nVertices + " vertices.");
+        }
+        this.graph = graph;
+        perm = new int[nVertices];
+        for (int p = 0; p < nVertices; p++) {
+            perm[p] = factPerm.get(p);
+        }
+    }
+
+    /**
+     * @return the root of the MD tree
+     */
+    MDTreeNode computeTree() {
+
+        if (nVertices == 0) {
+            return null;
+        } else if (nVertices == 1) {
+            return new MDTreeLeafNode(perm[0]);
+        }
+
+        int[] pos = new int[nVertices];
+        for (int p = 0; p < nVertices; p++) {
+            pos[perm[p]] = p;
+        }
+
+        // Step 1: leftmost and rightmost splitter of each pair
+        int nPairs = nVertices - 1;
+        int[] leftSplitter = new int[nPairs];
+        int[] rightSplitter = new int[nPairs];
+        int[] mark = new int[nVertices];
+        for (int i = 0; i < nPairs; i++) {
+            int x = perm[i];
+            int y = perm[i + 1];
+            int[] minMax = {Integer.MAX_VALUE, -1};
+            splittersOf(x, y, true, 4 * i + 1, mark, pos, minMax);
+            splittersOf(x, y, false, 4 * i + 3, mark, pos, minMax);
+            leftSplitter[i] = minMax[0];
+            rightSplitter[i] = minMax[1];
+        }
+
+        // Step 2: H(i) for each pair
+        int[] smallestStart = new int[nPairs];
+        int[] smallestEnd = new int[nPairs];
+        int[] alive = new int[nVertices]; // possible left ends: no splitter to the left
+        int aliveSize = 0;
+        int[] rightBlocked = new int[nPairs]; // pairs with a splitter to the right of b
+        int rightSize = 0;
+        int[] pending = new int[nPairs];
+        int pendingSize = 0;
+
+        for (int b = 1; b < nVertices; b++) {
+            int j = b - 1;
+            alive[aliveSize++] = j;
+            while (aliveSize > 0 && alive[aliveSize - 1] > leftSplitter[j]) {
+                aliveSize--;
+            }
+            while (rightSize > 0 && rightSplitter[rightBlocked[rightSize - 1]] <= rightSplitter[j]) {
+                rightSize--;
+            }
+            rightBlocked[rightSize++] = j;
+            while (rightSize > 0 && rightSplitter[rightBlocked[rightSize - 1]] <= b) {
+                rightSize--;
+            }
+            int minStart = rightSize == 0 ? 0 : rightBlocked[rightSize - 1] + 1;
+            pending[pendingSize++] = j;
+
+            int k = firstAtLeast(alive, aliveSize, minStart);
+            if (k < aliveSize) {
+                while (pendingSize > 0 && pending[pendingSize - 1] >= alive[k]) {
+                    int i = pending[--pendingSize];
+                    smallestStart[i] = alive[firstAtLeast(alive, aliveSize, i + 1) - 1];
+                    smallestEnd[i] = b;
+                }
+            }
+        }
+        if (pendingSize != 0) {
+            throw new IllegalStateException("Error: no module found for " + pendingSize + " pairs of the permutation.");
+        }
+
+        // Step 3: inclusion tree of the overlap components
+        Candidate root = buildInclusionTree(smallestStart, smallestEnd);
+        ArrayList<Candidate> postOrder = createTreeNodes(root);
+        computeTypesAndMergeWeakModules(postOrder);
+
+        return root.treeNode;
+    }
+
+    // marks the symmetric difference of the neighbourhoods of x and y
+    private void splittersOf(int x, int y, boolean outgoing, int tag, int[] mark, int[] pos, int[] minMax) {
+        int xBegin = outgoing ? graph.outBegin(x) : graph.inBegin(x);
+        int xEnd = outgoing ? graph.outEnd(x) : graph.inEnd(x);
+        int yBegin = outgoing ? graph.outBegin(y) : graph.inBegin(y);
+        int yEnd = outgoing ? graph.outEnd(y) : graph.inEnd(y);
+        for (int k = xBegin; k < xEnd; k++) {
+            mark[neighbour(outgoing, k)] = tag;
+        }
+        for (int k = yBegin; k < yEnd; k++) {
+            int z = neighbour(outgoing, k);
+            if (mark[z] == tag) {
+                mark[z] = tag + 1; // common neighbour
+            } else if (z != x) {
+                updateMinMax(pos[z], minMax);
+            }
+        }
+        for (int k = xBegin; k < xEnd; k++) {
+            int z = neighbour(outgoing, k);
+            if (mark[z] == tag && z != y) {
+                updateMinMax(pos[z], minMax);
+            }
+        }
+    }
+
+    private int neighbour(boolean outgoing, int k) {
+        return outgoing ? graph.outNeighbour(k) : graph.inNeighbour(k);
+    }
+
+    private static void updateMinMax(int p, int[] minMax) {
+        if (p < minMax[0]) minMax[0] = p;
+        if (p > minMax[1]) minMax[1] = p;
+    }
+
+    // index of the first entry >= value in the sorted array
+    private static int firstAtLeast(int[] sorted, int size, int value) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Sorts the intervals by start (ties: larger first) and builds the inclusion tree. An interval overlapping
+     * the current top of the stack belongs to the same degenerate node and is merged into it.
+     */
+    private Candidate buildInclusionTree(int[] starts, int[] ends) {
+
+        int nPairs = starts.length;
+        // bucket sort by start, then by end descending
+        int[] byEnd = new int[nPairs];
+        int[] count = new int[nVertices + 1];
+        for (int i = 0; i < nPairs; i++) count[ends[i] + 1]++;
+        for (int p = 0; p < nVertices; p++) count[p + 1] += count[p];
+        for (int i = 0; i < nPairs; i++) byEnd[count[ends[i]]++] = i;
+        int[] sorted = new int[nPairs];
+        Arrays.fill(count, 0);
+        for (int i = 0; i < nPairs; i++) count[starts[i] + 1]++;
+        for (int p = 0; p < nVertices; p++) count[p + 1] += count[p];
+        for (int k = nPairs - 1; k >= 0; k--) {
+            int i = byEnd[k];
+            sorted[count[starts[i]]++] = i;
+        }
+
+        Candidate root = new Candidate(0, nVertices - 1);
+        ArrayDeque<Candidate> stack = new ArrayDeque<>();
+        stack.push(root);
+        int lastStart = -1;
+        int lastEnd = -1;
+
+        for (int i : sorted) {
+            int start = starts[i];
+            int end = ends[i];
+            if (start == lastStart && end == lastEnd) {
+                continue;
+            }
+            lastStart = start;
+            lastEnd = end;
+
+            while (stack.peek().end < start) {
+                stack.pop();
+            }
+            Candidate top = stack.peek();
+            if (start == top.start && end == top.end) {
+                continue;
+            }
+            if (start > top.start && end > top.end) {
+                // overlap
+                top.end = end;
+                top.merged = true;
+                // might now overlap or equal its parent
+                while (stack.size() > 1) {
+                    Candidate current = stack.pop();
+                    Candidate parent = stack.peek();
+                    if (current.end > parent.end || (current.end == parent.end && current.start == parent.start)) {
+                        parent.end = current.end;
+                        parent.merged = true;
+                        current.dissolved = true;
+                    } else {
+                        stack.push(current);
+                        break;
+                    }
+                }
+            } else {
+                Candidate nested = new Candidate(start, end);
+                top.children.add(nested);
+                stack.push(nested);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Creates the MDTreeNodes (type PRIME for now) and the leaves. Dissolved candidates are skipped.
+     * @return the candidates in post order
+     */
+    private ArrayList<Candidate> createTreeNodes(Candidate root) {
+
+        ArrayList<Candidate> preOrder = new ArrayList<>();
+        ArrayDeque<Candidate> stack = new ArrayDeque<>();
+        root.treeNode = new MDTreeNode();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Candidate current = stack.pop();
+            preOrder.add(current);
+            // effective children in left to right order, dissolved ones are replaced by their children
+            ArrayList<Candidate> children = new ArrayList<>();
+            ArrayDeque<Candidate> toFlatten = new ArrayDeque<>();
+            for (int k = current.children.size() - 1; k >= 0; k--) {
+                toFlatten.push(current.children.get(k));
+            }
+            while (!toFlatten.isEmpty()) {
+                Candidate child = toFlatten.pop();
+                if (child.dissolved) {
+                    for (int k = child.children.size() - 1; k >= 0; k--) {
+                        toFlatten.push(child.children.get(k));
+                    }
+                } else {
+                    children.add(child);
+                }
+            }
+            current.children = children;
+
+            // addChild inserts at the front: go from right to left.
+            int[] reps = new int[current.end - current.start + 1];
+            int nReps = 0;
+            int p = current.end;
+            for (int k = children.size() - 1; k >= -1; k--) {
+                int childEnd = k >= 0 ? children.get(k).end : current.start - 1;
+                for (; p > childEnd; p--) {
+                    current.treeNode.addChild(new MDTreeLeafNode(perm[p]));
+                    reps[nReps++] = perm[p];
+                }
+                if (k >= 0) {
+                    Candidate child = children.get(k);
+                    child.treeNode = new MDTreeNode();
+                    current.treeNode.addChild(child.treeNode);
+                    reps[nReps++] = perm[child.start];
+                    stack.push(child);
+                    p = child.start - 1;
+                }
+            }
+            current.representatives = Arrays.copyOf(reps, nReps);
+        }
+
+        ArrayList<Candidate> postOrder = new ArrayList<>(preOrder.size());
+        for (int k = preOrder.size() - 1; k >= 0; k--) {
+            postOrder.add(preOrder.get(k));
+        }
+        return postOrder;
+    }
+
+    /**
+     * Determines the type of each node from the quotient graph given by one representative per child.
+     * A degenerate node with the same type as its parent is a weak module and replaced by its children.
+     */
+    private void computeTypesAndMergeWeakModules(ArrayList<Candidate> postOrder) {
+
+        int[] repOf = new int[nVertices];
+        Arrays.fill(repOf, -1);
+        int[] outMark = new int[nVertices];
+        Arrays.fill(outMark, -1);
+        int[] outCount = new int[nVertices];
+        int[] inCount = new int[nVertices];
+        int[] bothCount = new int[nVertices];
+
+        for (int t = 0; t < postOrder.size(); t++) {
+            Candidate candidate = postOrder.get(t);
+            MDTreeNode node = candidate.treeNode;
+            int[] reps = candidate.representatives;
+            int k = reps.length;
+            boolean forward = graph.hasArc(reps[0], reps[1]);
+            boolean backward = graph.hasArc(reps[1], reps[0]);
+
+            MDNodeType type;
+            if (candidate.merged || k == 2) {
+                type = typeOf(forward, backward);
+            } else {
+                // quotient graph: count arcs between the representatives
+                for (int r : reps) {
+                    repOf[r] = t;
+                    outCount[r] = 0;
+                    inCount[r] = 0;
+                    bothCount[r] = 0;
+                }
+                for (int r : reps) {
+                    for (int e = graph.outBegin(r); e < graph.outEnd(r); e++) {
+                        int w = graph.outNeighbour(e);
+                        outMark[w] = r;
+                        if (repOf[w] == t) {
+                            outCount[r]++;
+                        }
+                    }
+                    for (int e = graph.inBegin(r); e < graph.inEnd(r); e++) {
+                        int w = graph.inNeighbour(e);
+                        if (repOf[w] == t) {
+                            inCount[r]++;
+                            if (outMark[w] == r) {
+                                bothCount[r]++;
+                            }
+                        }
+                    }
+                }
+                boolean series = true;
+                boolean parallel = true;
+                boolean tournament = true;
+                boolean[] outDegreeSeen = new boolean[k];
+                for (int r : reps) {
+                    series &= bothCount[r] == k - 1;
+                    parallel &= outCount[r] == 0 && inCount[r] == 0;
+                    if (bothCount[r] != 0 || outCount[r] + inCount[r] != k - 1 || outDegreeSeen[outCount[r]]) {
+                        tournament = false;
+                    } else {
+                        outDegreeSeen[outCount[r]] = true;
+                    }
+                }
+                if (series) {
+                    type = MDNodeType.SERIES;
+                } else if (parallel) {
+                    type = MDNodeType.PARALLEL;
+                } else if (tournament) {
+                    // transitive, since all out-degrees differ
+                    type = MDNodeType.ORDER;
+                } else {
+                    type = MDNodeType.PRIME;
+                }
+            }
+            node.setType(type);
+        }
+
+        // top-down: replace weak modules by their children
+        for (int t = postOrder.size() - 1; t >= 0; t--) {
+            MDTreeNode node = postOrder.get(t).treeNode;
+            MDTreeNode parent = (MDTreeNode) node.getParent();
+            if (parent != null && node.getType() != MDNodeType.PRIME && node.getType() == parent.getType()) {
+                node.replaceThisByItsChildren();
+            }
+        }
+    }
+
+    private static MDNodeType typeOf(boolean forward, boolean backward) {
+        if (forward && backward) {
+            return MDNodeType.SERIES;
+        } else if (forward || backward) {
+            return MDNodeType.ORDER;
+        } else {
+            return MDNodeType.PARALLEL;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package dicograph.modDecomp;
+
+import java.util.Arrays;
+
+import dicograph.graphIO.IntDigraph;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The symmetric 2-structure H of a digraph:
+ *    E_H(u,v) = 0 if {u,v} non-edge (i.e. non-edge in both G_s and G_d)
+ *    E_H(u,v) = 1 if {u,v} edge (i.e. edge in both G_s and G_d)
+ *    E_H(u,v) = 2 if (u,v) or (v,u) simple arc (i.e. edge in G_s but not G_d)
+ * Dense graphs use a packed triangular matrix with 2 bits per pair, sparse graphs sorted neighbour arrays of G_s.
+ */
+abstract class HStructure {
+
+    /**
+     * Builds H in one pass over the arcs. Takes the variant that needs less memory.
+     */
+    static HStructure of(IntDigraph graph) {
+        return of(graph, false);
+    }
+
+    // sparse = true forces the sparse variant
+    static HStructure of(IntDigraph graph, boolean sparse) {
+        long n = graph.getnVertices();
+        long packedBytes = n * (n - 1) / 8;
+        long sparseBytes = 10L * graph.getnArcs() + 4 * n; // int and byte per neighbour in G_s, at most two per arc
+        if (!sparse && packedBytes <= sparseBytes && n * (n - 1) / 2 <= (long) Integer.MAX_VALUE * 32) {
+            return new Packed(graph);
+        } else {
+            return new Sparse(graph);
+        }
+    }
+
+    abstract int get(int u, int v);
+
+    private static final class Packed extends HStructure {
+
+        private final long[] entries; // pair index of (u,v), u > v: u(u-1)/2 + v
+
+        private Packed(IntDigraph graph) {
+            long n = graph.getnVertices();
+            entries = new long[(int) ((n * (n - 1) / 2 + 31) / 32)];
+            for (int u = 0; u < n; u++) {
+                for (int e = graph.outBegin(u); e < graph.outEnd(u); e++) {
+                    int v = graph.outNeighbour(e);
+                    long index = pairIndex(u, v);
+                    int word = (int) (index >>> 5);
+                    int shift = (int) (index & 31) << 1;
+                    // first arc of the pair: 2, the reverse arc turns it into 1
+                    long value = (entries[word] >>> shift) & 3;
+                    entries[word] = (entries[word] & ~(3L << shift)) | ((value == 0 ? 2L : 1L) << shift);
+                }
+            }
+        }
+
+        private static long pairIndex(int u, int v) {
+            if (u < v) {
+                int t = u;
+                u = v;
+                v = t;
+            }
+            return (long) u * (u - 1) / 2 + v;
+        }
+
+        @Override
+        int get(int u, int v) {
+            if (u == v) {
+                return 0;
+            }
+            long index = pairIndex(u, v);
+            return (int) (entries[(int) (index >>> 5)] >>> ((index & 31) << 1)) & 3;
+        }
+    }
+
+    private static final class Sparse extends HStructure {
+
+        private final int[] start;
+        private final int[] neighbours; // sorted neighbours in G_s
+        private final byte[] values;
+
+        private Sparse(IntDigraph graph) {
+            int n = graph.getnVertices();
+            start = new int[n + 1];
+            // merge the sorted out- and in-rows
+            int[] mergedNeighbours = new int[2 * graph.getnArcs()];
+            byte[] mergedValues = new byte[mergedNeighbours.length];
+            int size = 0;
+            for (int u = 0; u < n; u++) {
+                start[u] = size;
+                int o = graph.outBegin(u);
+                int i = graph.inBegin(u);
+                while (o < graph.outEnd(u) || i < graph.inEnd(u)) {
+                    int out = o < graph.outEnd(u) ? graph.outNeighbour(o) : Integer.MAX_VALUE;
+                    int in = i < graph.inEnd(u) ? graph.inNeighbour(i) : Integer.MAX_VALUE;
+                    if (out == in) {
+                        mergedNeighbours[size] = out;
+                        mergedValues[size++] = 1;
+                        o++;
+                        i++;
+                    } else {
+                        mergedNeighbours[size] = Math.min(out, in);
+                        mergedValues[size++] = 2;
+                        if (out < in) {
+                            o++;
+                        } else {
+                            i++;
+                        }
+                    }
+                }
+            }
+            start[n] = size;
+            neighbours = Arrays.copyOf(mergedNeighbours, size);
+            values = Arrays.copyOf(mergedValues, size);
+        }
+
+        @Override
+        int get(int u, int v) {
+            int pos = Arrays.binarySearch(neighbours, start[u], start[u + 1], v);
+            return pos < 0 ? 0 : values[pos];
+        }
+    }
+}
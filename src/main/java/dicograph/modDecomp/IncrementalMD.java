@@ -0,0 +1,201 @@
+package dicograph.modDecomp;
+
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.SimpleDirectedGraph;
+import org.jgrapht.io.ImportException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import dicograph.utils.Edge;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * MD tree of a digraph after a batch of arc toggles, computed from the MD tree before the toggles.
+ *
+ * Toggling (u,v) changes no arc between X = lca(u,v) and V \ X, so G'/X = G/X and X stays a module of G'.
+ * The new tree is the old one with the subtree of X replaced by the MD tree of G'[X]; if both roots are of the same
+ * non-prime type, the new root is merged into the parent. Only the maximal lcas of the batch are decomposed again.
+ */
+public final class IncrementalMD {
+
+    private final MDTree baseTree;
+    private final SimpleDirectedGraph<Integer, DefaultEdge> baseGraph; // null if not given
+    private final int nVertices;
+    private final Logger log;
+    private final MDEngine engine;
+
+    /**
+     * @param baseTree the MD tree of the graph before the toggles. It is not changed.
+     */
+    public IncrementalMD(MDTree baseTree, int nVertices, Logger log, MDEngine engine) {
+        this(baseTree, null, log, engine, nVertices);
+    }
+
+    /**
+     * With the graph of the base tree, the toggles can be applied as overlay, see computeModularDecomposition(toggled).
+     * Then this object can be used by several threads at once, as long as neither baseTree nor baseGraph is changed.
+     * @param baseGraph the graph before the toggles. It is not changed.
+     */
+    public IncrementalMD(MDTree baseTree, SimpleDirectedGraph<Integer, DefaultEdge> baseGraph, Logger log, MDEngine engine) {
+        this(baseTree, baseGraph, log, engine, baseGraph.vertexSet().size());
+    }
+
+    private IncrementalMD(MDTree baseTree, SimpleDirectedGraph<Integer, DefaultEdge> baseGraph, Logger log, MDEngine engine,
+                          int nVertices) {
+        this.baseTree = baseTree;
+        this.baseGraph = baseGraph;
+        this.nVertices = nVertices;
+        this.log = log;
+        this.engine = engine;
+    }
+
+    /**
+     * Like computeModularDecomposition(editedGraph, toggled), but reads only the base graph: the toggles inside a
+     * recomputed module are applied to its induced subgraph. Needs the constructor with baseGraph.
+     * @param toggled the toggled arcs. Arcs toggled twice must be left out.
+     * @return a new MD tree of the base graph with the toggles applied
+     */
+    public MDTree computeModularDecomposition(Collection<Edge> toggled)
+            throws IOException, ImportException, InterruptedException {
+        if (baseGraph == null) {
+            throw new IllegalStateException("Error: no base graph for the toggles.");
+        }
+        return compute(baseGraph, toggled, true);
+    }
+
+    /**
+     * @param editedGraph the graph after the toggles
+     * @param toggled the toggled arcs relative to the graph of the base tree. Arcs toggled twice must be left out.
+     * @return a new MD tree of editedGraph
+     */
+    public MDTree computeModularDecomposition(SimpleDirectedGraph<Integer, DefaultEdge> editedGraph, Collection<Edge> toggled)
+            throws IOException, ImportException, InterruptedException {
+        return compute(editedGraph, toggled, false);
+    }
+
+    private MDTree compute(SimpleDirectedGraph<Integer, DefaultEdge> graph, Collection<Edge> toggled, boolean overlay)
+            throws IOException, ImportException, InterruptedException {
+
+        MDTree tree = MDTree.readBinary(new ByteArrayInputStream(baseTree.toBinary()));
+        ModuleIntervals intervals = tree.getStrongModuleIntervals(nVertices);
+        MDTreeLeafNode[] leaves = tree.getLeaves();
+        LCAIndex lcaIndex = tree.getLCAIndex();
+
+        List<RootedTreeNode> lcas = new ArrayList<>(toggled.size());
+        for (Edge edge : toggled) {
+            int u = edge.getFirst();
+            int v = edge.getSecond();
+            if (u != v) {
+                lcas.add(lcaIndex.lca(leaves[u], leaves[v]));
+            }
+        }
+        // maximal ones: in preorder, a node is below the last maximal one iff its interval starts inside.
+        lcas.sort(Comparator.comparingInt(intervals::indexOf));
+        List<RootedTreeNode> maximal = new ArrayList<>();
+        int lastRight = -1;
+        for (RootedTreeNode lca : lcas) {
+            int index = intervals.indexOf(lca);
+            if (intervals.leftOf(index) > lastRight) {
+                maximal.add(lca);
+                lastRight = intervals.rightOf(index);
+            }
+        }
+
+        int[] localNo = new int[nVertices];
+        Arrays.fill(localNo, -1);
+        for (RootedTreeNode module : maximal) {
+            int[] vertices = intervals.vertices(module).toArray();
+            MDTreeNode newNode = decomposeInduced(graph, vertices, localNo, overlay ? toggled : null);
+            log.fine(() -> "Recomputed module of size " + vertices.length + ": " + newNode);
+
+            if (module == tree.root) {
+                newNode.removeSubtree();
+                tree.setRoot(newNode);
+            } else {
+                module.replaceWith(newNode);
+                MDTreeNode parent = (MDTreeNode) newNode.getParent();
+                if (newNode.getType() != MDNodeType.PRIME && newNode.getType() == parent.getType()) {
+                    newNode.replaceThisByItsChildren();
+                }
+            }
+        }
+
+        tree.getStrongModuleIntervals(nVertices);
+        return tree;
+    }
+
+    // MD tree of graph[vertices] with the toggles inside vertices applied, leaves numbered as in graph
+    private MDTreeNode decomposeInduced(SimpleDirectedGraph<Integer, DefaultEdge> graph, int[] vertices, int[] localNo,
+                                        Collection<Edge> toggled)
+            throws IOException, ImportException, InterruptedException {
+
+        SimpleDirectedGraph<Integer, DefaultEdge> induced = new SimpleDirectedGraph<>(DefaultEdge.class);
+        for (int i = 0; i < vertices.length; i++) {
+            localNo[vertices[i]] = i;
+            induced.addVertex(i);
+        }
+        for (int i = 0; i < vertices.length; i++) {
+            for (DefaultEdge edge : graph.outgoingEdgesOf(vertices[i])) {
+                int target = localNo[graph.getEdgeTarget(edge)];
+                if (target >= 0) {
+                    induced.addEdge(i, target);
+                }
+            }
+        }
+        if (toggled != null) {
+            for (Edge edge : toggled) {
+                int source = localNo[edge.getFirst()];
+                int target = localNo[edge.getSecond()];
+                if (source >= 0 && target >= 0 && source != target && induced.removeEdge(source, target) == null) {
+                    induced.addEdge(source, target);
+                }
+            }
+        }
+        for (int vertex : vertices) {
+            localNo[vertex] = -1;
+        }
+
+        MDTree subTree = new DirectedMD(induced, log, false, engine).computeModularDecomposition();
+        RootedTreeNode node = subTree.root;
+        while (node != null) {
+            if (node.isALeaf()) {
+                MDTreeLeafNode leaf = (MDTreeLeafNode) node;
+                leaf.vertexNo = vertices[leaf.vertexNo];
+            }
+            if (node.getFirstChild() != null) {
+                node = node.getFirstChild();
+            } else {
+                while (node != subTree.root && node.getRightSibling() == null) {
+                    node = node.getParent();
+                }
+                node = node == subTree.root ? null : node.getRightSibling();
+            }
+        }
+        return (MDTreeNode) subTree.root;
+    }
+}
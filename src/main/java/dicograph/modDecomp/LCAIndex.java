@@ -0,0 +1,192 @@
+package dicograph.modDecomp;
+
+import java.util.Collection;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Lowest common ancestors in O(1) via Euler tour and sparse table over the depths. Node ids in preorder.
+ * Built in O(N log N) for N tree nodes. The index is a snapshot: it is valid until a node of its tree is added,
+ * removed or moved. Changes of other trees don't affect it.
+ */
+final class LCAIndex {
+
+    final RootedTreeNode root;
+    private boolean valid = true; // set to false by the nodes, see RootedTreeNode.structureChanged()
+    private final RootedTreeNode[] nodes; // id -> node
+    private final int[] parent; // the root is its own parent
+    private final int[] depth;
+    private final int[] firstVisit; // id -> first position in Euler tour
+    private final int[][] sparseTable; // minimum depth ids in Euler tour
+
+    LCAIndex(RootedTreeNode root) {
+        this.root = root;
+
+        int nNodes = 0;
+        for (RootedTreeNode node = root; node != null; node = preOrderSuccessor(node)) {
+            node.lcaIndexId = nNodes++;
+            node.lcaIndex = this;
+        }
+        nodes = new RootedTreeNode[nNodes];
+        parent = new int[nNodes];
+        depth = new int[nNodes];
+        firstVisit = new int[nNodes];
+        int[] euler = new int[Math.max(2 * nNodes - 1, 0)];
+        int eulerLength = 0;
+
+        // walk the tree without recursion, the trees might be deep.
+        RootedTreeNode node = root;
+        while (node != null) {
+            int id = node.lcaIndexId;
+            nodes[id] = node;
+            if (node == root) {
+                parent[id] = id;
+                depth[id] = 0;
+            } else {
+                parent[id] = node.getParent().lcaIndexId;
+                depth[id] = depth[parent[id]] + 1;
+            }
+            firstVisit[id] = eulerLength;
+            euler[eulerLength++] = id;
+
+            if (node.getFirstChild() != null) {
+                node = node.getFirstChild();
+            } else {
+                // climb up, revisiting the parents in the tour
+                while (node != root && node.getRightSibling() == null) {
+                    node = node.getParent();
+                    euler[eulerLength++] = node.lcaIndexId;
+                }
+                if (node == root) {
+                    node = null;
+                } else {
+                    euler[eulerLength++] = node.getParent().lcaIndexId;
+                    node = node.getRightSibling();
+                }
+            }
+        }
+
+        int levels = 1;
+        while ((1 << levels) <= eulerLength) {
+            levels++;
+        }
+        sparseTable = new int[levels][];
+        sparseTable[0] = euler;
+        for (int k = 1; k < levels; k++) {
+            int len = eulerLength - (1 << k) + 1;
+            int[] prev = sparseTable[k - 1];
+            int[] row = new int[len];
+            for (int j = 0; j < len; j++) {
+                int left = prev[j];
+                int right = prev[j + (1 << (k - 1))];
+                row[j] = depth[left] <= depth[right] ? left : right;
+            }
+            sparseTable[k] = row;
+        }
+    }
+
+    // next node in preorder within the subtree of root, null at the end
+    private RootedTreeNode preOrderSuccessor(RootedTreeNode node) {
+        if (node.getFirstChild() != null) {
+            return node.getFirstChild();
+        }
+        while (node != root && node.getRightSibling() == null) {
+            node = node.getParent();
+        }
+        return node == root ? null : node.getRightSibling();
+    }
+
+    /**
+     * @return false if the tree has been changed since this index was built
+     */
+    boolean isValid() {
+        return valid;
+    }
+
+    void invalidate() {
+        valid = false;
+    }
+
+    int size() {
+        return nodes.length;
+    }
+
+    int idOf(RootedTreeNode node) {
+        int id = node.lcaIndexId;
+        if (id < 0 || id >= nodes.length || nodes[id] != node) {
+            throw new IllegalArgumentException("Error: node " + node + " is not in this tree.");
+        }
+        return id;
+    }
+
+    RootedTreeNode nodeOf(int id) {
+        return nodes[id];
+    }
+
+    int parentOf(int id) {
+        return parent[id];
+    }
+
+    int depthOf(int id) {
+        return depth[id];
+    }
+
+    /**
+     * @return id of the lca of the nodes with the given ids
+     */
+    int lca(int x, int y) {
+        int left = Math.min(firstVisit[x], firstVisit[y]);
+        int right = Math.max(firstVisit[x], firstVisit[y]);
+        return minDepthBetween(left, right);
+    }
+
+    RootedTreeNode lca(RootedTreeNode x, RootedTreeNode y) {
+        return nodes[lca(idOf(x), idOf(y))];
+    }
+
+    /**
+     * The lca of a set is the lca of its first and last node in the Euler tour. O(|nodes|).
+     */
+    RootedTreeNode lca(Collection<? extends RootedTreeNode> treeNodes) {
+        int min = Integer.MAX_VALUE;
+        int max = -1;
+        for (RootedTreeNode node : treeNodes) {
+            int pos = firstVisit[idOf(node)];
+            if (pos < min) min = pos;
+            if (pos > max) max = pos;
+        }
+        if (max < 0) {
+            throw new IllegalArgumentException("Error: lca of empty set.");
+        }
+        return nodes[minDepthBetween(min, max)];
+    }
+
+    // id of the node with minimal depth in the Euler tour between the two positions (inclusive)
+    int minDepthBetween(int left, int right) {
+        int k = 31 - Integer.numberOfLeadingZeros(right - left + 1);
+        int a = sparseTable[k][left];
+        int b = sparseTable[k][right - (1 << k) + 1];
+        return depth[a] <= depth[b] ? a : b;
+    }
+
+    int firstVisitOf(int id) {
+        return firstVisit[id];
+    }
+}
@@ -0,0 +1,29 @@
+package dicograph.modDecomp;
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * How DirectedMD computes the undirected MD of G_s and G_d. The overlap components and the final tree from the factorizing
+ * permutation are always computed in Java.
+ */
+public enum MDEngine {
+    JAVA,     // in-process: RecSubProblem
+    EXTERNAL, // default, one process per call: MD/build/mod_dec
+    WORKER;   // the same program built with --worker support, long-lived and fed with binary frames, see NativeWorkerPool
+}
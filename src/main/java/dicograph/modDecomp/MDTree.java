@@ -9,15 +9,25 @@ import org.jgrapht.io.DOTImporter;
 import org.jgrapht.io.ImportException;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +35,7 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Logger;
 
+import dicograph.graphIO.IntDigraph;
 import dicograph.utils.Triple;
 
 /**
@@ -53,6 +64,7 @@ import dicograph.utils.Triple;
 public class MDTree extends RootedTree {
 
     private MDTreeLeafNode[] leaves;
+    private ModuleIntervals moduleIntervals;
 		
 	/*
 	 * Creates the modular decomposition tree for the supplied graph.
@@ -99,46 +111,41 @@ public class MDTree extends RootedTree {
         return ret;
     }
 
+    /**
+     * Alternative to getStrongModulesBool in O(n) memory: the modules as intervals over the leaf order.
+     * The vertex sets of the nodes are then only computed on demand.
+     */
+    public ModuleIntervals getStrongModuleIntervals(int nLeaves) {
+        leaves = new MDTreeLeafNode[nLeaves];
+        moduleIntervals = new ModuleIntervals(root, nLeaves, leaves);
+        moduleToTreenode = null;
+        return moduleIntervals;
+    }
+
+    public ModuleIntervals getModuleIntervals() {
+        return moduleIntervals;
+    }
+
     /**
      * F.L. Makes the String representation of MDTree human-readable.
      * @param mdTree the MDTRee
      * @return the String, formatted according to the tree structure
      */
     public static String beautify(String mdTree){
-        StringBuilder ret = new StringBuilder();
-        int offsetMultiplier = 0;
-        char previous = '(';
-        for(char c : mdTree.toCharArray()){
-            if(c == '('){
-                ret.append("\n");
-                addOffset(ret,offsetMultiplier);
-                ret.append(c);
-                offsetMultiplier++;
-            } else if (c == ')'){
-                offsetMultiplier--;
-                // new line only for modules, not for vertices.
-                if(previous == ')') {
-                    ret.append("\n");
-                    addOffset(ret,offsetMultiplier);
-                }
-                ret.append(c);
-            } else {
-                ret.append(c);
-            }
-            previous = c;
+        StringWriter ret = new StringWriter(2 * mdTree.length());
+        try {
+            beautify(mdTree, ret);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not possible for a StringWriter
         }
-
-
         return ret.toString();
-
     }
 
-    // F.L. 2017
-    private static void addOffset(StringBuilder builder, int times){
-        String offset = "  ";
-        for(int i = 0; i< times; i++){
-            builder.append(offset);
-        }
+    /**
+     * Streaming variant of beautify(String): writes the formatted tree to out.
+     */
+    public static void beautify(CharSequence mdTree, Appendable out) throws IOException {
+        new BeautifyingAppendable(out).append(mdTree);
     }
 
 
@@ -208,7 +215,7 @@ public class MDTree extends RootedTree {
                     start = next.startsWith("MD Tree:");
             }
             String res = builder.toString();
-            log.finer("Passed .dot-file:\n" + res);
+            log.finer(() -> "Passed .dot-file:\n" + res);
             reader = new StringReader(res);
         }
 
@@ -216,6 +223,218 @@ public class MDTree extends RootedTree {
     }
 
 
+    /**
+     * Computes the MD tree of an undirected graph with a worker of MD, see NativeWorkerPool.
+     * @param inputGraph the graph, vertices numbered from 0 to n-1
+     */
+    static MDTree fromWorker(Graph<Integer, DefaultEdge> inputGraph) throws IOException, InterruptedException {
+        byte[] result = NativeWorkerPool.of(NativeWorkerPool.undirectedMDProgram).call(NativeWorkerPool.encodeGraph(inputGraph));
+        return readBinary(new ByteArrayInputStream(result));
+    }
+
+    // binary tree format. Number of nodes, then the nodes in pre-order: type byte, followed by the vertex
+    // number for a leaf or the number of children otherwise. All numbers as unsigned varints.
+    private static final int leafCode = 0;
+    private static final MDNodeType[] typeForCode = {null, MDNodeType.PRIME, MDNodeType.SERIES, MDNodeType.PARALLEL, MDNodeType.ORDER};
+
+    /**
+     * Writes this tree in the binary format, e.g. for caching. See readBinary.
+     */
+    public void writeBinary(OutputStream out) throws IOException {
+        ArrayList<RootedTreeNode> preOrder = new ArrayList<>();
+        RootedTreeNode node = root;
+        while (node != null) {
+            preOrder.add(node);
+            if (node.getFirstChild() != null) {
+                node = node.getFirstChild();
+            } else {
+                while (node != null && node != root && node.getRightSibling() == null) {
+                    node = node.getParent();
+                }
+                node = node == null || node == root ? null : node.getRightSibling();
+            }
+        }
+        writeNodes(out, preOrder);
+    }
+
+    private static void writeNodes(OutputStream out, List<RootedTreeNode> preOrder) throws IOException {
+        writeVarint(out, preOrder.size());
+        for (RootedTreeNode treeNode : preOrder) {
+            if (treeNode.isALeaf()) {
+                out.write(leafCode);
+                writeVarint(out, ((MDTreeLeafNode) treeNode).getVertexNo());
+            } else {
+                MDNodeType type = ((MDTreeNode) treeNode).getType();
+                out.write(Arrays.asList(typeForCode).indexOf(type));
+                writeVarint(out, treeNode.getNumChildren());
+            }
+        }
+    }
+
+    public byte[] toBinary() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writeBinary(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not possible for a byte array
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * The binary format with the children of every node ordered by their smallest vertex, so two MD trees of
+     * the same graph give the same bytes regardless of the child order the algorithms chose.
+     * The children of order nodes keep their order, it's part of the decomposition.
+     */
+    public byte[] toCanonicalBinary() {
+        if (root == null) {
+            return toBinary();
+        }
+        // smallest vertex below each node, children are visited before their parent in reverse pre-order
+        ArrayList<RootedTreeNode> preOrder = new ArrayList<>();
+        Deque<RootedTreeNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            RootedTreeNode node = stack.pop();
+            preOrder.add(node);
+            for (RootedTreeNode child = node.getFirstChild(); child != null; child = child.getRightSibling()) {
+                stack.push(child);
+            }
+        }
+        IdentityHashMap<RootedTreeNode, Integer> minVertex = new IdentityHashMap<>();
+        for (int i = preOrder.size() - 1; i >= 0; i--) {
+            RootedTreeNode node = preOrder.get(i);
+            int min = node.isALeaf() ? ((MDTreeLeafNode) node).getVertexNo() : Integer.MAX_VALUE;
+            for (RootedTreeNode child = node.getFirstChild(); child != null; child = child.getRightSibling()) {
+                min = Math.min(min, minVertex.get(child));
+            }
+            minVertex.put(node, min);
+        }
+
+        ArrayList<RootedTreeNode> canonicalOrder = new ArrayList<>(preOrder.size());
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            RootedTreeNode node = stack.pop();
+            canonicalOrder.add(node);
+            ArrayList<RootedTreeNode> children = new ArrayList<>(node.getNumChildren());
+            for (RootedTreeNode child = node.getFirstChild(); child != null; child = child.getRightSibling()) {
+                children.add(child);
+            }
+            if (node.isALeaf() || ((MDTreeNode) node).getType() != MDNodeType.ORDER) {
+                children.sort(Comparator.comparing(minVertex::get));
+            }
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writeNodes(out, canonicalOrder);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not possible for a byte array
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Builds the tree in a single pass, without intermediate graph.
+     * @param in tree in the format of writeBinary
+     */
+    public static MDTree readBinary(InputStream in) throws IOException {
+        MDTree ret = new MDTree();
+        int nNodes = readVarint(in);
+        if (nNodes == 0) {
+            return ret;
+        }
+
+        // open inner nodes with their number of missing children and last child
+        MDTreeNode[] openNodes = new MDTreeNode[nNodes];
+        int[] missingChildren = new int[nNodes];
+        RootedTreeNode[] lastChild = new RootedTreeNode[nNodes];
+        int open = 0;
+        MDTreeNode rootNode = null;
+
+        for (int i = 0; i < nNodes; i++) {
+            int code = in.read();
+            MDTreeNode node;
+            if (code == leafCode) {
+                node = new MDTreeLeafNode(readVarint(in));
+            } else if (code > 0 && code < typeForCode.length) {
+                node = new MDTreeNode(typeForCode[code]);
+            } else {
+                throw new IOException("Error: unknown node type " + code + " in binary MD tree.");
+            }
+
+            if (i == 0) {
+                rootNode = node;
+            } else {
+                if (open == 0) {
+                    throw new IOException("Error: more nodes than children in binary MD tree.");
+                }
+                int top = open - 1;
+                if (lastChild[top] == null) {
+                    openNodes[top].addChild(node);
+                } else {
+                    node.insertAfter(lastChild[top]);
+                }
+                lastChild[top] = node;
+                missingChildren[top]--;
+            }
+            while (open > 0 && missingChildren[open - 1] == 0) {
+                open--;
+            }
+
+            if (code != leafCode) {
+                int nChildren = readVarint(in);
+                if (nChildren > 0) {
+                    openNodes[open] = node;
+                    missingChildren[open] = nChildren;
+                    lastChild[open] = null;
+                    open++;
+                }
+            }
+        }
+        if (open > 0) {
+            throw new IOException("Error: binary MD tree is truncated.");
+        }
+        ret.setRoot(rootNode);
+        return ret;
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Error: binary MD tree is truncated.");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Error: malformed number in binary MD tree.");
+    }
+
+    /**
+     * Computes the MD tree of a digraph from a factorizing permutation in Java, instead of FP_to_DMD.
+     * @param inputGraph the digraph
+     * @param factPerm the vertices ordered as factorizing permutation
+     */
+    MDTree(IntDigraph inputGraph, List<Integer> factPerm){
+        super();
+        setRoot(new FactPermToMDTree(inputGraph, factPerm).computeTree());
+    }
+
     // F.L. 22.11.17: removing dummy primes from adrians MD
     public boolean removeDummies() {
         MDTreeNode rootNode = (MDTreeNode) root;
@@ -316,6 +535,19 @@ public class MDTree extends RootedTree {
         return leaves;
     }
 
+    /**
+     * TT-distance |T(this) Δ T(other)| of the triples as in getTriples(), computed in O(n²) without the triples.
+     * Runs in parallel for larger trees.
+     */
+    public long getTripletDistance(MDTree other) {
+        TripletDistance distance = new TripletDistance(this, other);
+        return distance.compute(distance.getnLeaves() >= TripletDistance.parallelThreshold);
+    }
+
+    public long getTripletDistance(MDTree other, boolean parallel) {
+        return new TripletDistance(this, other).compute(parallel);
+    }
+
     // F.L. 24.01.18: for triple metric
     public Set<Triple> getTriples(){
         Set<Triple> ret = new HashSet<>();
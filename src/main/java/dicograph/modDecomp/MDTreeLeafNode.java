@@ -1,5 +1,6 @@
 package dicograph.modDecomp;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
@@ -174,9 +175,11 @@ class MDTreeLeafNode extends MDTreeNode {
 	 * Returns a string representation of this node.  Merely uses the string
 	 * representation of the vertex with which it is associated.
 	 */
-	public String toString() {
+	@Override
+	boolean appendHead(Appendable out) throws IOException {
+	    out.append("(no= ");
 	    if(vertex != null)
-		    return String.format("(no= %s)", vertex.getLabel());
+		    out.append(String.valueOf(vertex.getLabel()));
 	    else{
 	    	// F.L. 2017
 //            StringBuilder result = new StringBuilder("(no= " + vertexNo);
@@ -196,21 +199,18 @@ class MDTreeLeafNode extends MDTreeNode {
 //            result.append(")");
 
 //            return result.toString();
-            return (String.format("(no= %s)", vertexNo));
+            out.append(Integer.toString(vertexNo));
         }
+	    return true;
 	}
 	// F.L. 2017
     public int getVertexNo() {
         return vertexNo;
     }
 
-    // F.L. 2017
     @Override
-	int exportAsDot(StringBuilder output, int[] counter){
-	    counter[0]++;
-		int myCounter = counter[0];
-		output.append(myCounter).append("[label=").append(vertexNo).append("];\n");
-		return myCounter;
+	String dotLabel() {
+		return Integer.toString(vertexNo);
 	}
 
 	// F.L. 2017
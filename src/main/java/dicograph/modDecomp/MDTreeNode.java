@@ -3,6 +3,7 @@ package dicograph.modDecomp;
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.SimpleDirectedGraph;
 
+import java.io.IOException;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
@@ -66,6 +67,10 @@ public class MDTreeNode extends RootedTreeNode {
 	// is a member.
 	private SplitDirection splitType;
 	
+	// The split marks this node has passed on to its children, only used
+	// for prime nodes.
+	private SplitDirection childrenSplitType;
+	
 	
 	/* The default constructor. */
 	protected MDTreeNode() {
@@ -75,6 +80,7 @@ public class MDTreeNode extends RootedTreeNode {
 		treeNumber = DEF_TREE_NUM;
 		numMarks = 0;
 		splitType = SplitDirection.NONE;
+		childrenSplitType = SplitDirection.NONE;
 	}
 	
 	
@@ -90,6 +96,7 @@ public class MDTreeNode extends RootedTreeNode {
 		treeNumber = copy.treeNumber;
 		numMarks = copy.numMarks;
 		splitType = copy.splitType;
+		childrenSplitType = SplitDirection.NONE;
 	}
 	
 	
@@ -138,6 +145,30 @@ public class MDTreeNode extends RootedTreeNode {
     }
 
 	
+	// computed on demand if the tree only has module intervals, see MDTree.getStrongModuleIntervals
+	@Override
+	public BitSet getVertices() {
+		if (vertices == null) {
+			BitSet ret = new BitSet();
+			RootedTreeNode node = this;
+			while (node != null) {
+				if (node.isALeaf()) {
+					ret.set(((MDTreeLeafNode) node).getVertexNo());
+				}
+				if (node.getFirstChild() != null) {
+					node = node.getFirstChild();
+				} else {
+					while (node != this && node.getRightSibling() == null) {
+						node = node.getParent();
+					}
+					node = node == this ? null : node.getRightSibling();
+				}
+			}
+			vertices = ret;
+		}
+		return vertices;
+	}
+
 	/* Adds one to the number of marks this node has received. */
 	protected void addMark() {
 		numMarks++;
@@ -344,7 +375,7 @@ public class MDTreeNode extends RootedTreeNode {
 		if (this.isRoot()) { return; }
 		
 		MDTreeNode parent = (MDTreeNode) getParent();		
-		parent.addSplitMark(splitType);		
+		parent.addSplitMark(splitType, true);		
 		parent.markAncestorsBySplit(splitType);	
 	}
 
@@ -356,32 +387,36 @@ public class MDTreeNode extends RootedTreeNode {
 	private void markChildrenBySplit(SplitDirection splitType) {
 		MDTreeNode currentChild = (MDTreeNode) getFirstChild();
 		while (currentChild != null) {
-			currentChild.addSplitMark(splitType);
+			currentChild.addSplitMark(splitType, false);
 			currentChild = (MDTreeNode) currentChild.getRightSibling();
 		}		
 	}
 
 	
 	/* 
-	 * Adds the given mark to this node.  If the node has already
-	 * been marked by this type, then nothing happens.  If the node 
-	 * already has a different mark it is marked as 'mixed'.  
-	 * If the node is prime, then the node's children are also 
-	 * marked by the supplied type.  
-	 * @param splitType the marke to be added.
+	 * Adds the given mark to this node.  If the node already has a 
+	 * different mark it is marked as 'mixed'.  
+	 * If the node is prime and has been split, or is an ancestor of a 
+	 * split node, then the node's children are also marked by the 
+	 * supplied type.  A prime node that is only moved as a whole is
+	 * still a module, so its children are not marked in that case.
+	 * @param splitType the mark to be added.
+	 * @param split true iff the node has been split or is an ancestor of
+	 * a split node.
 	 */
-	protected void addSplitMark(SplitDirection splitType) {
+	protected void addSplitMark(SplitDirection splitType, boolean split) {
 		
-		if (this.splitType == splitType) {
-			return;
-		} else if (this.splitType == SplitDirection.NONE) {
+		if (this.splitType == SplitDirection.NONE) {
 			this.splitType = splitType;
 		}
-		else {
+		else if (this.splitType != splitType) {
 			this.splitType = SplitDirection.MIXED;
 		}
 		
-		if (type == MDNodeType.PRIME) {
+		if (split && type == MDNodeType.PRIME && 
+				childrenSplitType != splitType && childrenSplitType != SplitDirection.MIXED) {
+			childrenSplitType = childrenSplitType == SplitDirection.NONE ? 
+					splitType : SplitDirection.MIXED;
 			markChildrenBySplit(splitType);
 		}
 	}
@@ -410,6 +445,7 @@ public class MDTreeNode extends RootedTreeNode {
 	protected void clearSplitMarksForSubtree() {
 		
 		splitType = SplitDirection.NONE;
+		childrenSplitType = SplitDirection.NONE;
 		
 		MDTreeNode currentChild = (MDTreeNode) getFirstChild();
 		while (currentChild != null) {
@@ -518,6 +554,7 @@ public class MDTreeNode extends RootedTreeNode {
 		treeNumber = DEF_TREE_NUM;
 		numMarks = 0;
 		splitType = SplitDirection.NONE;
+		childrenSplitType = SplitDirection.NONE;
 		
 		MDTreeNode currentChild = (MDTreeNode) getFirstChild();
 		while (currentChild != null) {
@@ -558,29 +595,22 @@ public class MDTreeNode extends RootedTreeNode {
 	
 	
 	/*
-	 * Reutrns a string representation of the subtree rooted at this node.
-	 * The representation is enclosed in brackets inside of which is listed the
-	 * root's type, the number of its children, and then the representation for
-	 * each of its children in order.
-	 * @return The string representation of the subtree rooted at this node.
-	 */	
-	public String toString() {
-		
-		String result ="(" ;
+	 * The string representation of the subtree rooted at this node is enclosed in brackets inside of which is
+	 * listed the root's type, the number of its children, and then the representation for each of its children
+	 * in order.
+	 */
+	@Override
+	boolean appendHead(Appendable out) throws IOException {
+		out.append('(');
 		if(isRoot())
-			result += "ROOT ";
-		result += type + ", numChildren=" + getNumChildren();
-		
-		RootedTreeNode current = getFirstChild();
-		if (current != null) { 
-			result += current; 
-			current  = current.getRightSibling(); 
-		}
-		while (current != null) {
-			result += ", " + current;
-			current = current.getRightSibling();
-		}
-		return result + ")";
+			out.append("ROOT ");
+		out.append(String.valueOf(type)).append(", numChildren=").append(Integer.toString(getNumChildren()));
+		return true;
+	}
+
+	@Override
+	String dotLabel() {
+		return String.valueOf(type);
 	}
 
 	// F.L. 22.11.17: deal with error in Adrains Code
@@ -642,8 +672,8 @@ public class MDTreeNode extends RootedTreeNode {
 			if (currChild.isALeaf())
 				vertexNo = ((MDTreeLeafNode) currChild).vertexNo;
 			else {
-				vertexNo = currChild.vertices.nextSetBit(0);
-				edgeWeight = currChild.vertices.cardinality(); // module preserving: every vertex!!!
+				vertexNo = currChild.getVertices().nextSetBit(0);
+				edgeWeight = currChild.getVertices().cardinality(); // module preserving: every vertex!!!
 			}
 			baseVNoTosubVNo.put(vertexNo,subIndex);
 			subGraph.addVertex(subIndex);
@@ -694,10 +724,10 @@ public class MDTreeNode extends RootedTreeNode {
 		while (currChild != null){
 			if(!currChild.isALeaf()){
 				MDTreeNode node = (MDTreeNode) currChild;
-				if(node.vertices.get(u))
-					fromU = (BitSet) node.vertices.clone();
-				else if(node.vertices.get(v))
-					fromV = (BitSet) node.vertices.clone();
+				if(node.getVertices().get(u))
+					fromU = (BitSet) node.getVertices().clone();
+				else if(node.getVertices().get(v))
+					fromV = (BitSet) node.getVertices().clone();
 			}
 			currChild = currChild.getRightSibling();
 		}
@@ -0,0 +1,212 @@
+package dicograph.modDecomp;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.stream.IntStream;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The strong modules of an MD tree as intervals [left, right] over the leaf order of the tree, i.e. a factorizing
+ * permutation. Needs O(n + number of nodes) memory instead of one BitSet of size n per module.
+ * Inner nodes, including the root, are numbered in preorder. A snapshot: moving nodes invalidates it.
+ */
+public final class ModuleIntervals {
+
+    private final int[] permutation; // position -> vertex
+    private final int[] position; // vertex -> position
+    private final RootedTreeNode[] nodes; // inner nodes in preorder
+    private final int[] left;
+    private final int[] right;
+    private final long[] keys; // sorted: left ascending, then right descending
+    private final IdentityHashMap<RootedTreeNode, Integer> nodeToIndex;
+
+    /**
+     * Numbers the leaves from left to right in one pass over the tree.
+     * @param leaves the size-initialized array for storing all leaves, may be null
+     */
+    ModuleIntervals(RootedTreeNode root, int nVertices, MDTreeLeafNode[] leaves) {
+        permutation = new int[nVertices];
+        position = new int[nVertices];
+        Arrays.fill(position, -1);
+
+        int nInner = 0;
+        for (RootedTreeNode node = root; node != null; node = preOrderSuccessor(root, node)) {
+            if (!node.isALeaf()) {
+                nInner++;
+            }
+        }
+        nodes = new RootedTreeNode[nInner];
+        left = new int[nInner];
+        right = new int[nInner];
+        nodeToIndex = new IdentityHashMap<>(nInner);
+
+        int nLeaves = 0;
+        RootedTreeNode node = root;
+        while (node != null) {
+            if (node.isALeaf()) {
+                MDTreeLeafNode leaf = (MDTreeLeafNode) node;
+                int vertex = leaf.getVertexNo();
+                if (vertex < 0 || vertex >= nVertices || position[vertex] >= 0) {
+                    throw new IllegalStateException("Error: invalid or repeated leaf " + vertex + " in MD tree.");
+                }
+                permutation[nLeaves] = vertex;
+                position[vertex] = nLeaves++;
+                if (leaves != null) {
+                    leaves[vertex] = leaf;
+                }
+            } else {
+                int index = nodeToIndex.size();
+                nodes[index] = node;
+                left[index] = nLeaves;
+                nodeToIndex.put(node, index);
+            }
+
+            if (node.getFirstChild() != null) {
+                node = node.getFirstChild();
+            } else {
+                if (!node.isALeaf()) {
+                    right[nodeToIndex.get(node)] = nLeaves - 1;
+                }
+                // the subtrees of the nodes we climb up are complete
+                while (node != root && node.getRightSibling() == null) {
+                    node = node.getParent();
+                    right[nodeToIndex.get(node)] = nLeaves - 1;
+                }
+                node = node == root ? null : node.getRightSibling();
+            }
+        }
+        if (nLeaves != nVertices) {
+            throw new IllegalStateException("Error: MD tree has " + nLeaves + " leaves, expected " + nVertices);
+        }
+
+        keys = new long[nInner];
+        for (int i = 0; i < nInner; i++) {
+            keys[i] = key(left[i], right[i]);
+        }
+    }
+
+    // preorder gives left ascending and, for equal left, the ancestors first
+    private static long key(int left, int right) {
+        return ((long) left << 32) | (Integer.MAX_VALUE - right);
+    }
+
+    private static RootedTreeNode preOrderSuccessor(RootedTreeNode root, RootedTreeNode node) {
+        if (node.getFirstChild() != null) {
+            return node.getFirstChild();
+        }
+        while (node != root && node.getRightSibling() == null) {
+            node = node.getParent();
+        }
+        return node == root ? null : node.getRightSibling();
+    }
+
+    public int getnVertices() {
+        return permutation.length;
+    }
+
+    /**
+     * @return the number of inner nodes, i.e. the root and the nontrivial strong modules
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    public int vertexAt(int pos) {
+        return permutation[pos];
+    }
+
+    public int positionOf(int vertex) {
+        return position[vertex];
+    }
+
+    /**
+     * @return the leaf order as array, not a copy
+     */
+    int[] getPermutation() {
+        return permutation;
+    }
+
+    public RootedTreeNode nodeAt(int index) {
+        return nodes[index];
+    }
+
+    public int leftOf(int index) {
+        return left[index];
+    }
+
+    public int rightOf(int index) {
+        return right[index];
+    }
+
+    public int indexOf(RootedTreeNode node) {
+        Integer index = nodeToIndex.get(node);
+        if (index == null) {
+            throw new IllegalArgumentException("Error: " + node + " is not an inner node of this tree.");
+        }
+        return index;
+    }
+
+    /**
+     * Interval-keyed lookup in O(log n).
+     * @return the highest node whose module consists of the vertices at positions left to right, null if none
+     */
+    public RootedTreeNode nodeOf(int left, int right) {
+        int index = Arrays.binarySearch(keys, key(left, right));
+        if (index < 0) {
+            return null;
+        }
+        // single-child chains have equal intervals
+        while (index > 0 && keys[index - 1] == keys[index]) {
+            index--;
+        }
+        return nodes[index];
+    }
+
+    public int moduleSize(RootedTreeNode node) {
+        int index = indexOf(node);
+        return right[index] - left[index] + 1;
+    }
+
+    public boolean contains(RootedTreeNode node, int vertex) {
+        int index = indexOf(node);
+        int pos = position[vertex];
+        return left[index] <= pos && pos <= right[index];
+    }
+
+    /**
+     * @return the first vertex of the module in the leaf order
+     */
+    public int anyVertex(RootedTreeNode node) {
+        return permutation[left[indexOf(node)]];
+    }
+
+    public IntStream vertices(RootedTreeNode node) {
+        int index = indexOf(node);
+        return Arrays.stream(permutation, left[index], right[index] + 1);
+    }
+
+    public BitSet toBitSet(RootedTreeNode node) {
+        BitSet ret = new BitSet(permutation.length);
+        vertices(node).forEach(ret::set);
+        return ret;
+    }
+}
@@ -0,0 +1,204 @@
+package dicograph.modDecomp;
+
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultEdge;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Pool of long-lived external programs, started with "--worker" and reused across calls (MDEngine.WORKER).
+ *
+ * Protocol on stdin/stdout, all ints 4 bytes big-endian:
+ *   handshake: on start, the worker writes int 0x444D4457 ("DMDW"). Programs without worker support don't, so
+ *              they are rejected before the first request.
+ *   request:  int length, payload
+ *   response: int length >= 0, payload; or int -length, error message (UTF-8)
+ * Payloads:
+ *   graph:       int n, int m, m times (int source, int target).
+ *                Response: the MD tree in the binary format of MDTree.writeBinary.
+ * A worker exits when stdin is closed.
+ */
+final class NativeWorkerPool {
+
+    static final String undirectedMDProgram = "./MD/build/mod_dec";
+
+    private static final int maxWorkers = Runtime.getRuntime().availableProcessors();
+    private static final int handshake = 0x444D4457;
+    private static final long handshakeTimeoutMillis = 10000;
+    private static final ConcurrentHashMap<String, NativeWorkerPool> pools = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(NativeWorkerPool::shutdownAll));
+    }
+
+    private final String program;
+    private final LinkedBlockingDeque<Worker> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits = new Semaphore(maxWorkers);
+
+    private NativeWorkerPool(String program) {
+        this.program = program;
+    }
+
+    static NativeWorkerPool of(String program) {
+        return pools.computeIfAbsent(program, NativeWorkerPool::new);
+    }
+
+    static void shutdownAll() {
+        for (NativeWorkerPool pool : pools.values()) {
+            Worker worker;
+            while ((worker = pool.idle.pollFirst()) != null) {
+                worker.close();
+            }
+        }
+    }
+
+    /**
+     * Sends one request to an idle worker, starts a new one if none is idle. At most one worker per processor.
+     * @return the payload of the response
+     */
+    byte[] call(byte[] request) throws IOException, InterruptedException {
+        permits.acquire();
+        try {
+            Worker worker = idle.pollFirst();
+            if (worker == null) {
+                worker = new Worker(program);
+            }
+            byte[] response;
+            try {
+                response = worker.exchange(request);
+            } catch (IOException e) {
+                // broken pipe or protocol error: don't reuse it
+                worker.close();
+                throw e;
+            }
+            idle.addFirst(worker);
+            return response;
+        } finally {
+            permits.release();
+        }
+    }
+
+    // keeps the request in memory, so the length prefix is known.
+    static byte[] encodeGraph(Graph<Integer, DefaultEdge> graph) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 + 8 * graph.edgeSet().size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(graph.vertexSet().size());
+            out.writeInt(graph.edgeSet().size());
+            for (DefaultEdge edge : graph.edgeSet()) {
+                out.writeInt(graph.getEdgeSource(edge));
+                out.writeInt(graph.getEdgeTarget(edge));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not possible for a byte array
+        }
+        return bytes.toByteArray();
+    }
+
+    static String decodeText(byte[] payload) {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    private static class Worker {
+
+        private final Process process;
+        private final DataOutputStream toWorker;
+        private final DataInputStream fromWorker;
+
+        Worker(String program) throws IOException, InterruptedException {
+            List<String> command = new ArrayList<>();
+            command.add(program);
+            command.add("--worker");
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
+            processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            process = processBuilder.start();
+            toWorker = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            fromWorker = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            try {
+                checkHandshake(program);
+            } catch (IOException | InterruptedException e) {
+                close();
+                throw e;
+            }
+        }
+
+        // fails fast if the program ignores --worker, e.g. the builds of the pinned submodules.
+        private void checkHandshake(String program) throws IOException, InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(handshakeTimeoutMillis);
+            while (fromWorker.available() < 4 && process.isAlive()) {
+                if (System.nanoTime() > deadline) {
+                    throw new IOException(noWorker(program, "no handshake within " + handshakeTimeoutMillis + " ms"));
+                }
+                Thread.sleep(10);
+            }
+            int received;
+            try {
+                received = fromWorker.readInt();
+            } catch (EOFException e) {
+                throw new IOException(noWorker(program, "it exited with code " + process.waitFor()));
+            }
+            if (received != handshake) {
+                throw new IOException(noWorker(program, String.format("wrong handshake 0x%08X", received)));
+            }
+        }
+
+        private static String noWorker(String program, String reason) {
+            return "Error: " + program + " is not a worker-capable build (" + reason + "). "
+                    + "Build it with --worker support or use -engine external.";
+        }
+
+        byte[] exchange(byte[] request) throws IOException {
+            toWorker.writeInt(request.length);
+            toWorker.write(request);
+            toWorker.flush();
+
+            int length = fromWorker.readInt();
+            byte[] payload = new byte[Math.abs(length)];
+            fromWorker.readFully(payload);
+            if (length < 0) {
+                throw new IOException("Error in worker: " + decodeText(payload));
+            }
+            return payload;
+        }
+
+        void close() {
+            try {
+                toWorker.close();
+            } catch (IOException e) {
+                // already gone
+            }
+            process.destroy();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package dicograph.modDecomp;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Computes the overlap components of S(T_s) ∪ S(T_d), the strong modules of two MD trees.
+ * Replaces M.Rao's implementation of Dahlhaus' algorithm that was called as external program.
+ *
+ * Since both families are laminar, a module X of T_a can only overlap modules of T_b. These are exactly the nodes
+ * of T_b that lie on the path from a leaf v ∈ X to the lca of X in T_b (exclusive) and that are not contained in X.
+ * The modules are processed by decreasing size, so only the path above the lowest already processed node containing v
+ * needs to be considered. Tree edges whose endpoints are known to be in the same component are contracted
+ * (union-find), such that every edge is walked at most once. Runtime: O(n + Σ|X|) (times inverse Ackermann).
+ */
+class OverlapComponents {
+
+    private final List<BitSet> modules;
+    private final int[] componentOf;
+
+    /**
+     * @param modules the nontrivial modules of both trees without doubles, sorted by size in descending order
+     * @param tree_a  the first MD tree, getStrongModulesBool must have been called
+     * @param tree_b  the second MD tree, getStrongModulesBool must have been called
+     * @param nVertices number of vertices
+     */
+    OverlapComponents(List<BitSet> modules, MDTree tree_a, MDTree tree_b, int nVertices) {
+
+        this.modules = modules;
+        componentOf = new int[modules.size()];
+        for (int i = 0; i < componentOf.length; i++) {
+            componentOf[i] = i;
+        }
+
+        HashMap<BitSet, Integer> moduleToIndex = new HashMap<>(modules.size() * 4 / 3 + 1);
+        for (int i = 0; i < modules.size(); i++) {
+            moduleToIndex.put(modules.get(i), i);
+        }
+
+        TreeIndex index_a = new TreeIndex(tree_a, moduleToIndex, modules.size(), nVertices);
+        TreeIndex index_b = new TreeIndex(tree_b, moduleToIndex, modules.size(), nVertices);
+
+        for (int i = 0; i < modules.size(); i++) {
+            BitSet module = modules.get(i);
+            // first activate in both trees: a module that is a node of both trees overlaps nothing.
+            index_a.activate(i, module);
+            index_b.activate(i, module);
+            if (index_a.hasNodeFor(i)) {
+                unionWithOverlapping(i, module, index_b);
+            }
+            if (index_b.hasNodeFor(i)) {
+                unionWithOverlapping(i, module, index_a);
+            }
+        }
+    }
+
+    /**
+     * Unites module no. i with all previously processed modules of the other tree that overlap it.
+     */
+    private void unionWithOverlapping(int i, BitSet module, TreeIndex other) {
+
+        int lcaDepth = other.depth(other.lcaOf(module));
+        for (int v = module.nextSetBit(0); v >= 0; v = module.nextSetBit(v + 1)) {
+            int node = other.lowestActive[v];
+            // nodes strictly below the lca contain v, but not all of X. Since processed, they are not smaller.
+            while (other.depth(node) > lcaDepth) {
+                union(i, other.moduleIndex[node]);
+                int top = other.topOfContractedPath(node);
+                if (other.depth(top) <= lcaDepth + 1) {
+                    break;
+                }
+                // parent of top also overlaps X -> contract the edge.
+                node = other.parent(top);
+                other.contract[top] = node;
+            }
+        }
+    }
+
+    private int find(int i) {
+        while (componentOf[i] != i) {
+            componentOf[i] = componentOf[componentOf[i]];
+            i = componentOf[i];
+        }
+        return i;
+    }
+
+    private void union(int i, int j) {
+        int ri = find(i);
+        int rj = find(j);
+        if (ri != rj) {
+            // the larger module (smaller index) represents the component
+            if (ri < rj) {
+                componentOf[rj] = ri;
+            } else {
+                componentOf[ri] = rj;
+            }
+        }
+    }
+
+    /**
+     * @return number of the overlap component for each module, in the order of the input
+     */
+    int[] getComponentNumbers() {
+        int[] ret = new int[componentOf.length];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = find(i);
+        }
+        return ret;
+    }
+
+    /**
+     * @return the union of each overlap component. The input modules are not modified.
+     */
+    HashMap<Integer, BitSet> getComponents() {
+        HashMap<Integer, BitSet> ret = new HashMap<>();
+        for (int i = 0; i < componentOf.length; i++) {
+            int componentNr = find(i);
+            BitSet union = ret.get(componentNr);
+            if (union == null) {
+                ret.put(componentNr, (BitSet) modules.get(i).clone());
+            } else {
+                union.or(modules.get(i));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Arrays per node of an MD tree, with node ids and lca from the tree's LCAIndex.
+     */
+    private static class TreeIndex {
+
+        final LCAIndex lca;
+        final int[] moduleIndex; // node id -> module number, -1 for root and leaves
+        final int[] contract;    // contracted tree edges, points towards the top of the path
+        final int[] lowestActive; // vertex -> lowest processed node containing it
+        private final int[] leafNode; // vertex -> node id
+        private final Map<Integer, int[]> moduleToNodes;
+
+        TreeIndex(MDTree tree, Map<BitSet, Integer> moduleToIndex, int nModules, int nVertices) {
+
+            lca = tree.getLCAIndex();
+            int nNodes = lca.size();
+            moduleIndex = new int[nNodes];
+            contract = new int[nNodes];
+            leafNode = new int[nVertices];
+            lowestActive = new int[nVertices];
+            moduleToNodes = new HashMap<>(nModules * 4 / 3 + 1);
+
+            for (int id = 0; id < nNodes; id++) {
+                RootedTreeNode node = lca.nodeOf(id);
+                contract[id] = id;
+                moduleIndex[id] = -1;
+                if (node.isALeaf()) {
+                    leafNode[((MDTreeLeafNode) node).getVertexNo()] = id;
+                } else if (!node.isRoot()) {
+                    Integer index = moduleToIndex.get(node.vertices);
+                    if (index != null) {
+                        moduleIndex[id] = index;
+                        addNodeForModule(index, id);
+                    }
+                }
+            }
+
+            int rootId = lca.idOf(tree.root);
+            for (int v = 0; v < nVertices; v++) {
+                lowestActive[v] = rootId; // the root contains everything
+            }
+        }
+
+        int depth(int id) {
+            return lca.depthOf(id);
+        }
+
+        int parent(int id) {
+            return lca.parentOf(id);
+        }
+
+        private void addNodeForModule(int module, int id) {
+            int[] old = moduleToNodes.get(module);
+            if (old == null) {
+                moduleToNodes.put(module, new int[]{id});
+            } else {
+                // degenerate node with a single child has the same vertices as its child
+                int[] all = new int[old.length + 1];
+                System.arraycopy(old, 0, all, 0, old.length);
+                all[old.length] = id;
+                moduleToNodes.put(module, all);
+            }
+        }
+
+        boolean hasNodeFor(int module) {
+            return moduleToNodes.containsKey(module);
+        }
+
+        /**
+         * Marks the node(s) of the module as processed, i.e. they're now the lowest processed nodes for their vertices.
+         */
+        void activate(int module, BitSet vertices) {
+            int[] nodes = moduleToNodes.get(module);
+            if (nodes != null) {
+                // the deepest one, if there are several
+                int node = nodes[0];
+                for (int other : nodes) {
+                    if (depth(other) > depth(node)) {
+                        node = other;
+                    }
+                }
+                for (int v = vertices.nextSetBit(0); v >= 0; v = vertices.nextSetBit(v + 1)) {
+                    lowestActive[v] = node;
+                }
+            }
+        }
+
+        /**
+         * @return id of the lowest common ancestor of the given leaves
+         */
+        int lcaOf(BitSet vertices) {
+            int min = Integer.MAX_VALUE;
+            int max = -1;
+            for (int v = vertices.nextSetBit(0); v >= 0; v = vertices.nextSetBit(v + 1)) {
+                int pos = lca.firstVisitOf(leafNode[v]);
+                if (pos < min) min = pos;
+                if (pos > max) max = pos;
+            }
+            return lca.minDepthBetween(min, max);
+        }
+
+        int topOfContractedPath(int node) {
+            while (contract[node] != node) {
+                contract[node] = contract[contract[node]];
+                node = contract[node];
+            }
+            return node;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package dicograph.modDecomp;
+
+import java.util.Arrays;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Ordered partition of {0,...,n-1}. The classes are a doubly linked list and consecutive ranges of one element
+ * array, in the same order. Splitting by a pivot set P costs O(|P|).
+ */
+final class PartitionRefinement {
+
+    private final int[] elements; // position -> element, class by class
+    private final int[] position; // element -> position
+    private final int[] classOf;
+    // per class id:
+    private final int[] begin;
+    private final int[] end; // exclusive
+    private final int[] next;
+    private final int[] previous;
+    private final int[] marked; // number of pivot elements moved to the front (or back) while splitting
+    private final int[] touched;
+    private int numberOfClasses;
+    private int firstClass;
+
+    /**
+     * Starts with the single class {0,...,n-1}.
+     */
+    PartitionRefinement(int n) {
+        elements = new int[n];
+        position = new int[n];
+        classOf = new int[n];
+        for (int x = 0; x < n; x++) {
+            elements[x] = x;
+            position[x] = x;
+        }
+        int maxClasses = Math.max(n, 1);
+        begin = new int[maxClasses];
+        end = new int[maxClasses];
+        next = new int[maxClasses];
+        previous = new int[maxClasses];
+        marked = new int[maxClasses];
+        touched = new int[maxClasses];
+        end[0] = n;
+        next[0] = -1;
+        previous[0] = -1;
+        numberOfClasses = n > 0 ? 1 : 0;
+        firstClass = n > 0 ? 0 : -1;
+    }
+
+    int size() {
+        return elements.length;
+    }
+
+    int getNumberOfClasses() {
+        return numberOfClasses;
+    }
+
+    int classOf(int x) {
+        return classOf[x];
+    }
+
+    int classSize(int c) {
+        return end[c] - begin[c];
+    }
+
+    int firstClass() {
+        return firstClass;
+    }
+
+    /**
+     * @return the class right of c, -1 if none
+     */
+    int nextClass(int c) {
+        return next[c];
+    }
+
+    int previousClass(int c) {
+        return previous[c];
+    }
+
+    /**
+     * The elements of class c are at the positions classBegin(c) to classEnd(c) - 1.
+     */
+    int classBegin(int c) {
+        return begin[c];
+    }
+
+    int classEnd(int c) {
+        return end[c];
+    }
+
+    int elementAt(int pos) {
+        return elements[pos];
+    }
+
+    int positionOf(int x) {
+        return position[x];
+    }
+
+    /**
+     * @return the elements in the order of the classes
+     */
+    int[] toArray() {
+        return Arrays.copyOf(elements, elements.length);
+    }
+
+    /**
+     * Splits every class X with X ∩ P nonempty and X \ P nonempty into X ∩ P and X \ P. O(|P|).
+     * @param pivot the elements of P at indices 0 to length - 1, doubles are ignored
+     * @param pivotFirst whether X ∩ P is placed left of X \ P
+     */
+    void refine(int[] pivot, int length, boolean pivotFirst) {
+        int nTouched = 0;
+        for (int i = 0; i < length; i++) {
+            int x = pivot[i];
+            int c = classOf[x];
+            int target;
+            if (pivotFirst) {
+                target = begin[c] + marked[c];
+                if (position[x] < target) {
+                    continue; // already moved
+                }
+            } else {
+                target = end[c] - 1 - marked[c];
+                if (position[x] > target) {
+                    continue;
+                }
+            }
+            if (marked[c] == 0) {
+                touched[nTouched++] = c;
+            }
+            marked[c]++;
+            swap(position[x], target);
+        }
+
+        for (int i = 0; i < nTouched; i++) {
+            int c = touched[i];
+            int count = marked[c];
+            marked[c] = 0;
+            if (count == classSize(c)) {
+                continue;
+            }
+            int d = numberOfClasses++;
+            if (pivotFirst) {
+                begin[d] = begin[c];
+                end[d] = begin[c] + count;
+                begin[c] = end[d];
+                // link d left of c
+                previous[d] = previous[c];
+                next[d] = c;
+                if (previous[c] >= 0) {
+                    next[previous[c]] = d;
+                } else {
+                    firstClass = d;
+                }
+                previous[c] = d;
+            } else {
+                end[d] = end[c];
+                begin[d] = end[c] - count;
+                end[c] = begin[d];
+                // link d right of c
+                next[d] = next[c];
+                previous[d] = c;
+                if (next[c] >= 0) {
+                    previous[next[c]] = d;
+                }
+                next[c] = d;
+            }
+            for (int pos = begin[d]; pos < end[d]; pos++) {
+                classOf[elements[pos]] = d;
+            }
+        }
+    }
+
+    private void swap(int pos1, int pos2) {
+        int x = elements[pos1];
+        int y = elements[pos2];
+        elements[pos1] = y;
+        elements[pos2] = x;
+        position[y] = pos1;
+        position[x] = pos2;
+    }
+}
@@ -2,6 +2,7 @@ package dicograph.modDecomp;
 
 import org.jgrapht.alg.util.Pair;
 
+import java.io.IOException;
 import java.util.BitSet;
 import java.util.logging.Logger;
 /*
@@ -40,8 +41,9 @@ public class PartitiveFamilyLeafNode extends PartitiveFamilyTreeNode {
     }
 
     @Override
-    public String toString() {
-        return "(Leaf: " + vertex + ")";
+    boolean appendHead(Appendable out) throws IOException {
+        out.append("(Leaf: ").append(Integer.toString(vertex));
+        return true;
     }
 
     /**
@@ -56,10 +58,7 @@ public class PartitiveFamilyLeafNode extends PartitiveFamilyTreeNode {
     }
 
     @Override
-    int exportAsDot(StringBuilder output, int[] counter){
-        counter[0]++;
-        int myCounter = counter[0];
-        output.append(myCounter).append("[label=").append(vertex).append("];\n");
-        return myCounter;
+    String dotLabel() {
+        return Integer.toString(vertex);
     }
 }
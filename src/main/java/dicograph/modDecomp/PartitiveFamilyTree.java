@@ -1,13 +1,11 @@
 package dicograph.modDecomp;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import dicograph.utils.SortAndCompare;
@@ -88,9 +86,9 @@ public class PartitiveFamilyTree extends RootedTree {
         // Therefore: "BucketSort" edges of G according to σ. BitSets guarantee easy symdiff operation.:
 
         // This is for N_{+}: 1st key is outVertex, 2nd key is destVertex
-        BitSet[] sortedOutEgdes = SortAndCompare.edgesSortedByPerm(permutationAsIntegers, positionInPermutation, data.inputGraph, true);
+        BitSet[] sortedOutEgdes = SortAndCompare.edgesSortedByPerm(permutationAsIntegers, positionInPermutation, data.digraph, true);
         // This is for N_{-}: 1st key is destVertex, 2nd outVertex
-        BitSet[] sortedInEdges = SortAndCompare.edgesSortedByPerm(permutationAsIntegers, positionInPermutation,  data.inputGraph, false);
+        BitSet[] sortedInEdges = SortAndCompare.edgesSortedByPerm(permutationAsIntegers, positionInPermutation, data.digraph, false);
 
 
 
@@ -123,10 +121,10 @@ public class PartitiveFamilyTree extends RootedTree {
             }
 
             // This is for N_{+}: 1st key is outVertex, 2nd key is destVertex
-            BitSet[] outEgdes = SortAndCompare.edgesSortedByPerm(integers, posiperm, data.inputGraph, true);
+            BitSet[] outEgdes = SortAndCompare.edgesSortedByPerm(integers, posiperm, data.digraph, true);
 
             // This is for N_{-}: 1st key is destVertex, 2nd outVertex
-            BitSet[] inEdges = SortAndCompare.edgesSortedByPerm(integers, posiperm,  data.inputGraph, false);
+            BitSet[] inEdges = SortAndCompare.edgesSortedByPerm(integers, posiperm, data.digraph, false);
 
             // Now, let's test the equivalence classes of leaves 9,10 and 12:
             // how should I know who is forming a prime and who not?
@@ -142,16 +140,18 @@ public class PartitiveFamilyTree extends RootedTree {
 //                }
 //            }
 
-            data.log.finer("Out-Edges:");
-            for(int i = 0; i< outEgdes.length; i++){
-                BitSet edge = outEgdes[i];
-                data.log.finer(integers.get(i).toString() + ": " + edge);
-            }
+            if(data.log.isLoggable(Level.FINER)) {
+                data.log.finer("Out-Edges:");
+                for (int i = 0; i < outEgdes.length; i++) {
+                    BitSet edge = outEgdes[i];
+                    data.log.finer(integers.get(i).toString() + ": " + edge);
+                }
 
-            data.log.finer("In-Edges:");
-            for(int i = 0; i< inEdges.length; i++){
-                BitSet edge = inEdges[i];
-                data.log.finer(integers.get(i).toString() + ": " + edge);
+                data.log.finer("In-Edges:");
+                for (int i = 0; i < inEdges.length; i++) {
+                    BitSet edge = inEdges[i];
+                    data.log.finer(integers.get(i).toString() + ": " + edge);
+                }
             }
 
 
@@ -165,114 +165,144 @@ public class PartitiveFamilyTree extends RootedTree {
      * @param nVertices the number of vertices
      * @return the leaves of the Tree
      */
-
     public PartitiveFamilyLeafNode[] createInclusionTreeFromBitsets(Collection<BitSet> inputSet, Logger log, int nVertices) {
-
-        HashMap<BitSet, RootedTreeNode> bitsetToInclusionTreenNode = new HashMap<>(inputSet.size()*4/3);
-
-        // Step 0: eliminate doubles from input and add root, if not yet present.
-        HashSet<BitSet> inputSetNoDoubles = new HashSet<>(inputSet);
-        if (inputSetNoDoubles.size() != inputSet.size()) {
-            log.finer(() -> "Double entry in input for inclusion tree");
-        }
-        // add root, if not yet included
-        BitSet rootSet = new BitSet(nVertices);
-        rootSet.set(0, nVertices);
-        if(!inputSetNoDoubles.contains(rootSet)) {
-            inputSetNoDoubles.add(rootSet);
+        List<int[]> modules = new ArrayList<>(inputSet.size());
+        BitSet[] moduleSets = new BitSet[inputSet.size()];
+        for (BitSet module : inputSet) {
+            moduleSets[modules.size()] = module;
+            modules.add(module.stream().toArray());
         }
-        ArrayList<BitSet> inputNodeList = new ArrayList<>(inputSetNoDoubles);
-
-        // Sort the array by size, using bucket sort (w/o singletons)
-        SortAndCompare.bucketSortBySize(inputNodeList,true);
-        log.finer(() -> "Input sorted by size: " + inputNodeList);
+        return createInclusionTree(modules, moduleSets, log, nVertices);
+    }
 
+    /**
+     * Creates the inclusion tree of a laminar family (Lemma 11) in O(n + sz(F)), using flat arrays only.
+     * Doubles, singletons and V itself are allowed in the input.
+     * @param modules the members of the family, as arrays of vertices
+     * @param nVertices the number of vertices
+     * @return the leaves of the Tree
+     */
+    public PartitiveFamilyLeafNode[] createInclusionTree(List<int[]> modules, Logger log, int nVertices) {
+        return createInclusionTree(modules, null, log, nVertices);
+    }
 
-        // Create a List for each v ∈ V of the members of F (i.e. the elements of σ) containing v in ascending order of their size:
+    // moduleSets: the BitSets of the modules to be used for the tree nodes, built if null.
+    private PartitiveFamilyLeafNode[] createInclusionTree(List<int[]> modules, BitSet[] moduleSets, Logger log, int nVertices) {
 
-        // init empty
-        ArrayList<LinkedList<BitSet>> xLists = new ArrayList<>(nVertices);
-        for (int i = 0; i < nVertices; i++) {
-            xLists.add(i, new LinkedList<>());
+        // Step 0: sort by size, descending, using bucket sort. Singletons and V are not needed.
+        int nModules = modules.size();
+        int[] bucketStart = new int[nVertices + 1];
+        for (int[] module : modules) {
+            if (module.length > 1 && module.length < nVertices) {
+                bucketStart[nVertices - module.length]++;
+            }
+        }
+        int sum = 0;
+        for (int size = 0; size <= nVertices; size++) {
+            int count = bucketStart[size];
+            bucketStart[size] = sum;
+            sum += count;
+        }
+        int[] sortedModules = new int[sum];
+        for (int m = 0; m < nModules; m++) {
+            int length = modules.get(m).length;
+            if (length > 1 && length < nVertices) {
+                sortedModules[bucketStart[nVertices - length]++] = m;
+            }
         }
 
+        // Create a List for each v ∈ V of the members of F containing v in ascending order of their size:
+        // visit each Y ∈ F in descending order of size. For each x ∈ Y, insert Y in front of x's list. [O(sz(F)]
+        int[] xListStart = new int[nVertices + 1];
+        for (int m : sortedModules) {
+            for (int x : modules.get(m)) {
+                xListStart[x + 1]++;
+            }
+        }
+        for (int x = 0; x < nVertices; x++) {
+            xListStart[x + 1] += xListStart[x];
+        }
+        int[] xLists = new int[xListStart[nVertices]];
+        int[] front = Arrays.copyOfRange(xListStart, 1, nVertices + 1);
+        for (int m : sortedModules) {
+            for (int x : modules.get(m)) {
+                xLists[--front[x]] = m;
+            }
+        }
 
-
-        // - visit each Y ∈ F in descending order of size. For each x ∈ Y, insert pointer to Y to front of x's list. [O(sz(F)]
-        inputNodeList.forEach(ySet ->
-                ySet.stream().forEach(i ->
-                        xLists.get(i).addFirst(ySet)
-                )
-        );
-        // root is now the last element in every xList
-
-
+        BitSet rootSet = new BitSet(nVertices);
+        rootSet.set(0, nVertices);
         PartitiveFamilyTreeNode root = new PartitiveFamilyTreeNode(rootSet, this);
         this.setRoot(root);
-        //HashMap<BitSet, RootedTreeNode> bitsetToOverlapTreenNode = new HashMap<>(nontrivOverlapComponents.size() * 4 / 3);
-        bitsetToInclusionTreenNode.put(rootSet, root);
 
         // This creates the inclusion tree from the x's lists
         // - visit each x ∈ V, put a parent pointer from each member of x's list to its successor in x's list (if not already done)
-        //      -> these are chains of ancestors of {x}
-
+        //      -> these are chains of ancestors of {x}. Doubles have the same size and are neighbours in every list.
+        int[] representative = new int[nModules];
+        Arrays.fill(representative, -1);
+        PartitiveFamilyTreeNode[] treeNodes = new PartitiveFamilyTreeNode[nModules];
         PartitiveFamilyLeafNode[] allLeafs = new PartitiveFamilyLeafNode[nVertices];
         int relationCount = 0;
+        boolean doubles = false;
         for (int vertexNr = 0; vertexNr < nVertices; vertexNr++) {
 
-            // retrieve List and create leafNode
-            LinkedList<BitSet> currVertexList = xLists.get(vertexNr);
-            PartitiveFamilyLeafNode leafNode = new PartitiveFamilyLeafNode(vertexNr,this);
-
-            boolean firstEntry = true;
-            ListIterator<BitSet> vListIter = currVertexList.listIterator(0);
-            while (vListIter.hasNext()) {
-
-                BitSet currModule = vListIter.next();
-                // create Trenode if not yet present
-                PartitiveFamilyTreeNode currTreenode = (PartitiveFamilyTreeNode) bitsetToInclusionTreenNode.getOrDefault(currModule, null);
-                if (currTreenode == null) {
-                    currTreenode =  new PartitiveFamilyTreeNode(currModule,this);
-                    bitsetToInclusionTreenNode.put(currModule, currTreenode);
-                }
-
-                // the first entry of the list always gets the leaf attached.
-                if (firstEntry) {
-                    currTreenode.addChild(leafNode); // no need to change bitset
-                    allLeafs[vertexNr] = leafNode;
-                    firstEntry = false;
-                }
-
-                // add as child to the next element of xList
-                // Note: currTreenode.equals(root) occurs when we're at the end of the list
-                // Don't check for parent of root, of course.
-                if (vListIter.hasNext()) {
-                    BitSet parentModule = vListIter.next();
-                    PartitiveFamilyTreeNode parentTreeNode = (PartitiveFamilyTreeNode) bitsetToInclusionTreenNode.get(parentModule);
-
-                    // create parent if not yet present
-                    if (parentTreeNode == null) {
-                        parentTreeNode = new PartitiveFamilyTreeNode(parentModule,this);
-                        bitsetToInclusionTreenNode.put(parentModule, parentTreeNode);
-                        log.finer("Vertex " + vertexNr + ": Created Parent " + parentModule);
+            PartitiveFamilyLeafNode leafNode = new PartitiveFamilyLeafNode(vertexNr, this);
+            allLeafs[vertexNr] = leafNode;
+            // the first entry of the list always gets the leaf attached.
+            RootedTreeNode currTreenode = leafNode;
+            int currSize = 1;
+
+            for (int i = xListStart[vertexNr]; i <= xListStart[vertexNr + 1]; i++) {
+                PartitiveFamilyTreeNode parentTreeNode;
+                int parentSize;
+                if (i == xListStart[vertexNr + 1]) {
+                    parentTreeNode = root;
+                    parentSize = nVertices;
+                } else {
+                    int m = xLists[i];
+                    parentSize = modules.get(m).length;
+                    if (representative[m] < 0) {
+                        // same size as its predecessor means equal sets
+                        representative[m] = parentSize == currSize ? representative[xLists[i - 1]] : m;
+                    }
+                    if (parentSize == currSize) {
+                        doubles = true;
+                        continue;
                     }
+                    int r = representative[m];
+                    if (treeNodes[r] == null) {
+                        BitSet vertices = moduleSets != null ? moduleSets[r] : toBitSet(modules.get(r), nVertices);
+                        treeNodes[r] = new PartitiveFamilyTreeNode(vertices, this);
+                    }
+                    parentTreeNode = treeNodes[r];
+                }
 
-                    // add parent if current treenode has no parent
-                    if (currTreenode.isRoot()) {
-                        parentTreeNode.addChild(currTreenode); // no need to update bitset here, they are already set.
+                // add parent if current treenode has no parent
+                if (currTreenode.isRoot()) {
+                    parentTreeNode.addChild(currTreenode); // no need to update bitset here, they are already set.
+                    if (currTreenode != leafNode) {
                         relationCount++;
-                        log.finer("Vertex " + vertexNr + ": Rel " + relationCount + ": child " + currModule + " to parent " + parentModule);
                     }
-                    // go one element back in list
-                    vListIter.previous();
                 }
-
+                currTreenode = parentTreeNode;
+                currSize = parentSize;
             }
-
         }
-        moduleToTreenode = bitsetToInclusionTreenNode;
+        if (doubles) {
+            log.finer(() -> "Double entry in input for inclusion tree");
+        }
+        final int relations = relationCount;
+        log.finer(() -> "Inclusion tree with " + relations + " parent relations");
         return allLeafs;
     }
 
+    private static BitSet toBitSet(int[] module, int nVertices) {
+        BitSet ret = new BitSet(nVertices);
+        for (int vertex : module) {
+            ret.set(vertex);
+        }
+        return ret;
+    }
+
 
 }
@@ -4,12 +4,12 @@ import org.jgrapht.alg.util.Pair;
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.SimpleDirectedGraph;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -69,7 +69,9 @@ public class PartitiveFamilyTreeNode extends RootedTreeNode {
 
     @Override
     PartitiveFamilyTreeNode removeThis() {
-        treeContext.moduleToTreenode.remove(vertices);
+        if (treeContext.moduleToTreenode != null) {
+            treeContext.moduleToTreenode.remove(vertices);
+        }
         // help GC
         inducedPartialSubgraph = null;
         vertices = null;
@@ -160,7 +162,7 @@ public class PartitiveFamilyTreeNode extends RootedTreeNode {
             switch (typeVal){
                 case 0:
                     type = MDNodeType.PARALLEL;
-                    data.log.warning("Unexpected parallel node " + this);
+                    data.log.warning(() -> "Unexpected parallel node " + this);
                     break;
                 case 1:
                     type = MDNodeType.SERIES;
@@ -382,88 +384,58 @@ public class PartitiveFamilyTreeNode extends RootedTreeNode {
     private final Function<SimpleDirectedGraph<Integer, DefaultEdge>, List<Pair<Integer,Integer>>> perfFactPermFromTournament = tournament -> {
 
         int n = tournament.vertexSet().size();
-        HashMap<Integer, Collection<Integer>> vertexToPartition = new HashMap<>(n*4/3);
-        ArrayList<Collection<Integer>> partitions = new ArrayList<>(n);
         // init: P_0 = V. This also defines the vertex Indices.
-        List<Integer> VList = new ArrayList<>(tournament.vertexSet());
-        partitions.add(VList);
-        for(int vertex : VList) {
-            vertexToPartition.put(vertex, VList);
+        int[] indexToVertex = new int[n];
+        HashMap<Integer, Integer> vertexToIndex = new HashMap<>(n*4/3);
+        for(int vertex : tournament.vertexSet()) {
+            indexToVertex[vertexToIndex.size()] = vertex;
+            vertexToIndex.put(vertex, vertexToIndex.size());
         }
+        PartitionRefinement partitions = new PartitionRefinement(n);
 
         //neuer Ansatz für merged modules:
-        HashMap<Integer,Integer> vertexToOutdegree = new HashMap<>(n*4/3);
+        int[] outdegree = new int[n];
+        int[] pivot = new int[n];
 
         for(int i = 0; i<n; i++){
 
-            int realVertexNo = VList.get(i);
-            Collection<Integer> cPartition = vertexToPartition.get(realVertexNo);
-            int partitionsIndex = partitions.indexOf(cPartition);
+            int realVertexNo = indexToVertex[i];
+            int cPartition = partitions.classOf(i);
 
             Set <DefaultEdge> outgoing = tournament.outgoingEdgesOf(realVertexNo);
-            vertexToOutdegree.put(realVertexNo,outgoing.size());
-
+            outdegree[i] = outgoing.size();
 
             // skip singletons. We're done if we have n singletons.
-            if (cPartition.size() > 1 && partitions.size() < n) {
-                // neighborhood N_- and N_+:
+            if (partitions.classSize(cPartition) > 1 && partitions.getNumberOfClasses() < n) {
+                // neighborhood N_-:
                 Set <DefaultEdge> incoming = tournament.incomingEdgesOf(realVertexNo);
 
                 assert incoming.size() + outgoing.size() == n-1 : "Not a tournament: " + tournament; // still true for merger.
 
-                HashSet<Integer> inNeighbors = new HashSet<>(incoming.size()*4/3);
+                // C ∩ N_{-}(v_i)
+                int length = 0;
                 for( DefaultEdge edge : incoming){
-                    int source = tournament.getEdgeSource(edge);
-                    inNeighbors.add( source );
-                }
-                inNeighbors.retainAll(cPartition); // Compute the intersection
-
-                HashSet<Integer> outNeigbors = new HashSet<>(outgoing.size()*4/3);
-                for( DefaultEdge edge : outgoing){
-                    int source = tournament.getEdgeTarget(edge);
-                    outNeigbors.add( source );
-                }
-                outNeigbors.retainAll(cPartition);
-
-                // update partitions and update map
-                // remove the former C
-                vertexToPartition.remove(realVertexNo);
-                partitions.remove(partitionsIndex);
-
-                // add C ∩ N_{-}(v_i), if not empty
-                if(!inNeighbors.isEmpty()) {
-                    partitions.add(partitionsIndex, inNeighbors);
-                    for (int vNo : inNeighbors) {
-                        vertexToPartition.put(vNo, inNeighbors);
+                    int source = vertexToIndex.get(tournament.getEdgeSource(edge));
+                    if (partitions.classOf(source) == cPartition) {
+                        pivot[length++] = source;
                     }
-                    partitionsIndex++;
                 }
 
-                // add singleton {v_i}
-                ArrayList<Integer> singleton = new ArrayList<>(1);
-                singleton.add(realVertexNo);
-                partitions.add(partitionsIndex, singleton);
-                vertexToPartition.put(realVertexNo, singleton);
-                partitionsIndex++;
-
-                // add C ∩ N_{+}(v_i), if not empty
-                if(!outNeigbors.isEmpty()) {
-                    partitions.add(partitionsIndex, outNeigbors);
-                    for (int vNo : outNeigbors) {
-                        vertexToPartition.put(vNo, outNeigbors);
-                    }
-                }
+                // replace C by C ∩ N_{-}(v_i), {v_i}, C ∩ N_{+}(v_i), if not empty
+                partitions.refine(pivot, length, true);
+                pivot[0] = i;
+                partitions.refine(pivot, 1, true);
             }
         }
 
         ArrayList<Pair<Integer,Integer>> ret = new ArrayList<>(n);
 
-        for(Collection<Integer> singleton : partitions){
-            if(singleton.size() != 1) {
-                throw new IllegalStateException("Error: invalid element " + singleton + " of partitions: " + partitions + "\nvertexToPartition: " + vertexToPartition);
+        for(int c = partitions.firstClass(); c >= 0; c = partitions.nextClass(c)){
+            if(partitions.classSize(c) != 1) {
+                throw new IllegalStateException("Error: invalid partition of size " + partitions.classSize(c) + " for tournament " + tournament);
             } else {
-                int realVertexNo = singleton.stream().findFirst().get();
-                ret.add(new Pair<>(realVertexNo, vertexToOutdegree.get(realVertexNo)));
+                int index = partitions.elementAt(partitions.classBegin(c));
+                ret.add(new Pair<>(indexToVertex[index], outdegree[index]));
             }
         }
 
@@ -763,25 +735,20 @@ public class PartitiveFamilyTreeNode extends RootedTreeNode {
     }
 
 
-    public String toString() {
-
-        StringBuilder result = new StringBuilder("(");
+    @Override
+    boolean appendHead(Appendable out) throws IOException {
+        out.append('(');
         if(isRoot())
-            result.append("ROOT ");
+            out.append("ROOT ");
         if(type != null)
-            result.append(type.toString()).append(", ");
-        result.append("numChildren=").append(getNumChildren());
+            out.append(type.toString()).append(", ");
+        out.append("numChildren=").append(Integer.toString(getNumChildren()));
+        return true;
+    }
 
-        RootedTreeNode current = getFirstChild();
-        if (current != null) {
-            result.append(current);
-            current  = current.getRightSibling();
-        }
-        while (current != null) {
-            result.append(", ").append(current);
-            current = current.getRightSibling();
-        }
-        return result.append(')').toString();
+    @Override
+    String dotLabel() {
+        return String.valueOf(getType());
     }
 
     public MDNodeType getType() {
@@ -4,8 +4,10 @@ import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.SimpleGraph;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.ListIterator;
@@ -861,6 +863,12 @@ class RecSubProblem extends RootedTreeNode {
 				
 		Collection<MDTreeNode> siblingGroups = groupSiblingNodes(subtreeRoots);
 				
+		// Nodes of the collection that weren't grouped with siblings are moved
+		// as a whole, they aren't split.
+		Set<MDTreeNode> ungrouped = 
+			Collections.newSetFromMap(new IdentityHashMap<MDTreeNode,Boolean>());
+		ungrouped.addAll(subtreeRoots);
+
 		// Remove roots of trees.
 		Iterator<MDTreeNode> sibGroupsIt = siblingGroups.iterator();
 		while (sibGroupsIt.hasNext()) {
@@ -894,6 +902,7 @@ class RecSubProblem extends RootedTreeNode {
 															
 			MDTreeNode currentParent = (MDTreeNode) current.getParent();			
 			MDTreeNode newSibling;
+			boolean newSiblingSplit = true;
 			
 			// Parent is a root, must split the tree.
 			if (currentParent.isRoot()) {
@@ -920,6 +929,7 @@ class RecSubProblem extends RootedTreeNode {
 									
 				if (currentParent.hasOnlyOneChild()) { 
 					newSibling = (MDTreeNode)currentParent.getFirstChild();
+					newSiblingSplit = false;
 					currentParent.addChild(current);						
 				}
 				else {
@@ -935,8 +945,8 @@ class RecSubProblem extends RootedTreeNode {
 				}							
 			}	
 			
-			current.addSplitMark(splitType);
-			newSibling.addSplitMark(splitType);			
+			current.addSplitMark(splitType, !ungrouped.contains(current));
+			newSibling.addSplitMark(splitType, newSiblingSplit);			
 			current.markAncestorsBySplit(splitType);
 			newSibling.markAncestorsBySplit(splitType);						
 		}	
@@ -1018,12 +1028,16 @@ class RecSubProblem extends RootedTreeNode {
 											
 			MDTreeNode currentParent = parentsIt.next();
 			
+			// The marked children are at the front of the child list.  Count
+			// them by the parent's marks: a child can also carry marks as the
+			// parent of other nodes in the collection, but isn't one of them.
+			int numGrouped = currentParent.getNumMarks();
 			currentParent.clearMarks();
 
 			MDTreeNode groupedChildren = new MDTreeNode(currentParent);				
 			MDTreeNode currentChild = 
 				(MDTreeNode) currentParent.getFirstChild();								
-			while (currentChild != null && currentChild.isMarked()) {
+			for (int i = 0; i < numGrouped; i++) {
 
 				MDTreeNode nextChild = 
 					(MDTreeNode) currentChild.getRightSibling();
@@ -1381,6 +1395,12 @@ class RecSubProblem extends RootedTreeNode {
 	}
 
 	
+	// own string representation, see toString()
+	@Override
+	boolean appendHead(Appendable out) {
+		return false;
+	}
+
 	/* 
 	 * A string representation of this subproblem.  The children subtrees of this
 	 * subproblem are converted to a string and separated by square brackets.  
@@ -3,6 +3,7 @@ package dicograph.modDecomp;
 import org.jgrapht.Graph;
 import org.jgrapht.graph.DefaultEdge;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.HashMap;
@@ -44,6 +45,9 @@ class RootedTree {
 
 	// The root of the tree.
 	protected RootedTreeNode root;
+
+	// built on demand
+	private LCAIndex lcaIndex;
 	
 	
 	/* The default constructor. */
@@ -93,11 +97,38 @@ class RootedTree {
     }
 
 
+    /**
+     * @return all inner nodes, including the root, in preorder
+     */
+    List<RootedTreeNode> getInnerNodes() {
+        List<RootedTreeNode> ret = new ArrayList<>();
+        RootedTreeNode node = root;
+        while (node != null) {
+            if (!node.isALeaf())
+                ret.add(node);
+            if (node.getFirstChild() != null) {
+                node = node.getFirstChild();
+            } else {
+                while (node != root && node.getRightSibling() == null) {
+                    node = node.getParent();
+                }
+                node = node == root ? null : node.getRightSibling();
+            }
+        }
+        return ret;
+    }
+
     // F.L. 16.11.17: Debug option (via moduleToTreenode)
     public String verifyNodeTypes(Graph<Integer, DefaultEdge> graph, boolean directed) {
 
         StringBuilder builder = new StringBuilder();
-        LinkedList<RootedTreeNode> allNodes = new LinkedList<>(moduleToTreenode.values());
+        LinkedList<RootedTreeNode> allNodes = new LinkedList<>();
+        if (moduleToTreenode != null) {
+            allNodes.addAll(moduleToTreenode.values());
+        } else {
+            // only module intervals: take all inner nodes
+            allNodes.addAll(getInnerNodes());
+        }
         if(!allNodes.contains(root))
             allNodes.add(root);
 
@@ -115,7 +146,7 @@ class RootedTree {
                         anyVertex = ((MDTreeLeafNode) currChild).getVertexNo();
                     //}
                 } else {
-                    anyVertex = currChild.vertices.nextSetBit(0);
+                    anyVertex = currChild.getVertices().nextSetBit(0);
                 }
                 if (anyVertex >= 0)
                     childRepresentatives.add(anyVertex);
@@ -143,72 +174,57 @@ class RootedTree {
         return builder.toString();
     }
 
+    /**
+     * Writes the same as toString() to out, without building the String.
+     */
+    public void writeTo(Appendable out) throws IOException {
+        root.writeTo(out);
+    }
+
+    /**
+     * Writes the same as MDTree.beautify(toString()) to out, without building the Strings.
+     */
+    public void writeBeautifiedTo(Appendable out) throws IOException {
+        root.writeTo(new BeautifyingAppendable(out));
+    }
+
     // F.L. 18.11.17: export Tree as .dot
     public String exportAsDot(){
-        StringBuilder output = new StringBuilder("digraph G {\n");
-        int[] counter = new int[1];
-        counter[0] = -1;
-        root.exportAsDot(output,counter);
-        output.append("}\n");
+        StringBuilder output = new StringBuilder();
+        try {
+            writeDotTo(output);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not possible for a StringBuilder
+        }
         return output.toString();
     }
 
-    // F.L. 27.01.18: KISS! Incoming list will be changed.
-    public RootedTreeNode getLCA(List<RootedTreeNode> nodes){
-
-        if(nodes.size() == 1)
-            return nodes.get(0);
-        else if(nodes.size() == 2)
-            return getLCA(nodes.get(0),nodes.get(1));
-        else{
-            RootedTreeNode lca = getLCA(nodes.get(0),nodes.get(1));
-            if(lca.equals(root))
-                return root;
-            nodes.remove(0);
-            nodes.remove(0);
-            nodes.add(lca);
-            return getLCA( nodes );
-        }
+    /**
+     * Writes the same as exportAsDot() to out.
+     */
+    public void writeDotTo(Appendable out) throws IOException {
+        out.append("digraph G {\n");
+        root.writeDotTo(out, 0);
+        out.append("}\n");
     }
 
-    // F.L. 27.01.18: KISS!
-    private RootedTreeNode getLCA(RootedTreeNode x, RootedTreeNode y){
-        // trivial cases
-        if(x.equals(root) || y.equals(root))
-            return root;
-        if(x.equals(y))
-            return x;
-
-        LinkedList<RootedTreeNode> xList = new LinkedList<>();
-        RootedTreeNode current = x;
-        while (current != null){
-            xList.add(0,current);
-            current = current.getParent(); // until root
-            if(y.equals(current))
-                return y; // y is ancestor of x
-        }
+    // O(|nodes|) with the LCA index. The list is not changed.
+    public RootedTreeNode getLCA(List<RootedTreeNode> nodes){
+        return getLCAIndex().lca(nodes);
+    }
 
-        LinkedList<RootedTreeNode> yList = new LinkedList<>();
-        current = y;
-        while (current != null){
-            yList.add(0,current);
-            current = current.getParent();
-            if(x.equals(current))
-                return x; // x is ancestor of y
-        }
+    public RootedTreeNode getLCA(RootedTreeNode x, RootedTreeNode y){
+        return getLCAIndex().lca(x, y);
+    }
 
-        // run list top-down to find lca
-        RootedTreeNode previous = root;
-        while (true){
-            if(xList.isEmpty() || yList.isEmpty())
-                throw new IllegalStateException("Empty lists in LCA search!");
-            RootedTreeNode nextX = xList.pop();
-            RootedTreeNode nextY = yList.pop();
-            if(!nextX.equals(nextY))
-                return previous;
-            else
-                previous = nextX;
+    /**
+     * @return the LCA index of this tree, rebuilt if the tree has been changed since the last call
+     */
+    LCAIndex getLCAIndex() {
+        if (lcaIndex == null || lcaIndex.root != root || !lcaIndex.isValid()) {
+            lcaIndex = new LCAIndex(root);
         }
+        return lcaIndex;
     }
 
 }
@@ -3,7 +3,9 @@ package dicograph.modDecomp;
 import org.jgrapht.Graph;
 import org.jgrapht.graph.DefaultEdge;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.LinkedList;
@@ -47,6 +49,10 @@ public class RootedTreeNode {
     int nodeNumber;
     // end
 
+    // the last LCAIndex built for the tree of this node and the position in it. A change of the tree invalidates it.
+    int lcaIndexId = -1;
+    LCAIndex lcaIndex;
+
 	// The parent of this node.
 	private RootedTreeNode parent;
 	
@@ -120,6 +126,7 @@ public class RootedTreeNode {
      */
 	protected void addChild(RootedTreeNode child) {
 		child.removeSubtree();
+		structureChanged();
 		if (firstChild != null) {
 			firstChild.leftSibling = child;
 			child.rightSibling = firstChild;
@@ -156,6 +163,7 @@ public class RootedTreeNode {
 	 */
 	protected void replaceWith(RootedTreeNode replacement) {
 		replacement.removeSubtree();
+		structureChanged();
 		replacement.leftSibling = leftSibling;
 		replacement.rightSibling = rightSibling;
 		if (leftSibling != null) {leftSibling.rightSibling = replacement; }
@@ -174,6 +182,7 @@ public class RootedTreeNode {
 	 * as it is removed.
 	 */
 	protected void removeSubtree() {
+		structureChanged();
 		if (parent != null) { parent.numChildren--; }
 		if (leftSibling != null) { leftSibling.rightSibling = rightSibling; }
 		if (rightSibling != null) { rightSibling.leftSibling = leftSibling; }
@@ -192,6 +201,7 @@ public class RootedTreeNode {
 	 */
 	protected void insertBefore(RootedTreeNode justBefore) {
 		removeSubtree();
+		justBefore.structureChanged();
 		leftSibling = justBefore.leftSibling;
 		if (justBefore.leftSibling != null) { 
 			justBefore.leftSibling.rightSibling = this; 
@@ -221,6 +231,7 @@ public class RootedTreeNode {
 	 */
 	protected void insertAfter(RootedTreeNode justAfter) {
 		removeSubtree();
+		justAfter.structureChanged();
 		
 		rightSibling = justAfter.rightSibling;
 		if (justAfter.rightSibling != null) {
@@ -362,17 +373,51 @@ public class RootedTreeNode {
 	 * @return The string representation of the subtree rooted at this node.
 	 */
 	public String toString() {
-		String result = "(numChildren=" + numChildren + " ";
-		RootedTreeNode currentChild = firstChild;
-		if (currentChild != null) { 
-			result += currentChild;
-			currentChild = currentChild.rightSibling;
+		StringBuilder result = new StringBuilder();
+		try {
+			writeTo(result);
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // not possible for a StringBuilder
 		}
-		while (currentChild != null) {
-			result += ", " + currentChild;
-			currentChild = currentChild.rightSibling;
+		return result.toString();
+	}
+
+	/**
+	 * Streaming variant of toString, without recursion: writes the subtree rooted at this node to out.
+	 */
+	public void writeTo(Appendable out) throws IOException {
+		RootedTreeNode node = this;
+		while (true) {
+			boolean bracketForm = node.appendHead(out);
+			if (!bracketForm) {
+				out.append(node.toString());
+			} else if (node.firstChild != null) {
+				node = node.firstChild;
+				continue;
+			}
+			if (bracketForm) {
+				out.append(')');
+			}
+			// the subtrees of the nodes we climb up are complete
+			while (node != this && node.rightSibling == null) {
+				node = node.parent;
+				out.append(')');
+			}
+			if (node == this) {
+				return;
+			}
+			out.append(", ");
+			node = node.rightSibling;
 		}
-		return result + ")";
+	}
+
+	/**
+	 * Appends the bracket form of this node without children and without the closing bracket.
+	 * @return false if this node has no bracket form, then toString() is used for its whole subtree
+	 */
+	boolean appendHead(Appendable out) throws IOException {
+		out.append("(numChildren=").append(Integer.toString(numChildren)).append(' ');
+		return true;
 	}
 
     /**
@@ -412,43 +457,67 @@ public class RootedTreeNode {
 	    return thisNodesMembers;
     }
 
-    // F.L. 2017
-     int exportAsDot(StringBuilder output, int[] counter){
-
-         // first action: increment the counter, used for this
-         counter[0] ++;
-         // assign the number to this node
-         int myNumber = counter[0];
-
-         String label;
-         if(this instanceof MDTreeNode){
-             label = ((MDTreeNode) this).getType().toString();
-         } else if(this instanceof PartitiveFamilyTreeNode){
-             label = ((PartitiveFamilyTreeNode)this).getType().toString();
-         } else {
-             label = vertices.toString();
-         }
-
-         output.append(myNumber).append("[label=").append(label).append("];\n");
-
-         RootedTreeNode currentChild = firstChild;
-         while (currentChild != null){
-             // add edge from this to no of child
-             // increment happens as first step
-
-             int childNo = currentChild.exportAsDot(output, counter);
-             output.append(myNumber).append("->").append(childNo).append( ";\n");
-             currentChild = currentChild.rightSibling;
-         }
+    /**
+     * Writes the nodes and edges of the subtree rooted at this node in DOT format, without recursion.
+     * Nodes are numbered in preorder from firstNumber on, the edge to a child follows the child's subtree.
+     * @return the number after the last one used
+     */
+    int writeDotTo(Appendable out, int firstNumber) throws IOException {
+        int number = firstNumber;
+        int[] parentNumbers = new int[16]; // numbers of the ancestors up to this node
+        int depth = 0;
+        RootedTreeNode node = this;
+        while (true) {
+            int myNumber = number++;
+            out.append(Integer.toString(myNumber)).append("[label=").append(node.dotLabel()).append("];\n");
+            if (node.firstChild != null) {
+                if (depth == parentNumbers.length) {
+                    parentNumbers = Arrays.copyOf(parentNumbers, 2 * depth);
+                }
+                parentNumbers[depth++] = myNumber;
+                node = node.firstChild;
+                continue;
+            }
+            int childNumber = myNumber;
+            while (node != this && node.rightSibling == null) {
+                int parentNumber = parentNumbers[--depth];
+                appendDotEdge(out, parentNumber, childNumber);
+                childNumber = parentNumber;
+                node = node.parent;
+            }
+            if (node == this) {
+                return number;
+            }
+            appendDotEdge(out, parentNumbers[depth - 1], childNumber);
+            node = node.rightSibling;
+        }
+    }
 
-         return myNumber;
+    private static void appendDotEdge(Appendable out, int from, int to) throws IOException {
+        out.append(Integer.toString(from)).append("->").append(Integer.toString(to)).append(";\n");
+    }
 
-	}
+    // label of this node in the DOT format, see writeDotTo
+    String dotLabel() {
+        return String.valueOf(vertices);
+    }
 
     void setParent(RootedTreeNode parent) {
+        structureChanged();
+        if (parent != null) {
+            parent.structureChanged();
+        }
         this.parent = parent;
     }
 
+    // called on a node of each tree whose structure changes. Only that tree's index is invalidated, in O(1).
+    private void structureChanged() {
+        if (lcaIndex != null) {
+            lcaIndex.invalidate();
+            lcaIndex = null;
+        }
+    }
+
 
 
     // F.L. 24.11.17:
@@ -477,8 +546,8 @@ public class RootedTreeNode {
 
 	// F.L. 2017
 	void verifyModuleStatus(StringBuilder res, Graph<Integer, DefaultEdge> graph){
-		ArrayList<Integer> moduleVertices = new ArrayList<>(vertices.cardinality());
-		vertices.stream().forEach(moduleVertices::add);
+		ArrayList<Integer> moduleVertices = new ArrayList<>(getVertices().cardinality());
+		getVertices().stream().forEach(moduleVertices::add);
 		res.append(SortAndCompare.checkModuleBruteForce(graph,moduleVertices, true));
 	}
 
@@ -0,0 +1,158 @@
+package dicograph.modDecomp;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Triplet distance |T(A) Δ T(B)| of two trees on the same leaves, T as in MDTree.getTriples, without the triples.
+ *
+ * xy|z is a triple of A iff z is not below lca_A(x,y). So the pair {x,y} contributes |L_A(lca_A) Δ L_B(lca_B)| =
+ * |L_A| + |L_B| - 2 |L_A ∩ L_B|, where L are the leaves below the lca. For each inner node u of A, the leaves of u are
+ * counted below every node of B in O(|B|), then each pair with lca_A = u takes O(1).
+ * Runtime: O(|A| |B| + n²) = O(n²), memory O(n).
+ */
+class TripletDistance {
+
+    static final int parallelThreshold = 256; // leaves
+
+    private final LCAIndex indexA;
+    private final LCAIndex indexB;
+    private final int nLeaves;
+    private final int[] leafSequenceA; // leaf ids of A in preorder
+    private final int[] leafStartA; // node id of A -> range in leafSequenceA
+    private final int[] leafEndA;
+    private final int[] leafIdB; // vertex -> leaf id in B
+    private final int[] leavesBelowB; // node id of B -> number of leaves below
+
+    TripletDistance(MDTree a, MDTree b) {
+        indexA = a.getLCAIndex();
+        indexB = b.getLCAIndex();
+
+        int sizeA = indexA.size();
+        leafStartA = new int[sizeA];
+        leafEndA = new int[sizeA];
+        int count = 0;
+        for (int id = 0; id < sizeA; id++) {
+            if (indexA.nodeOf(id).isALeaf()) {
+                count++;
+            }
+        }
+        nLeaves = count;
+        leafSequenceA = new int[nLeaves];
+        int maxVertex = -1;
+        count = 0;
+        for (int id = 0; id < sizeA; id++) {
+            leafStartA[id] = count;
+            RootedTreeNode node = indexA.nodeOf(id);
+            if (node.isALeaf()) {
+                leafSequenceA[count++] = id;
+                maxVertex = Math.max(maxVertex, ((MDTreeLeafNode) node).getVertexNo());
+            }
+        }
+        // preorder: the leaves of a subtree are consecutive, it ends where the next non-descendant starts
+        for (int id = sizeA - 1; id >= 0; id--) {
+            leafEndA[id] = Math.max(leafEndA[id], indexA.nodeOf(id).isALeaf() ? leafStartA[id] + 1 : leafStartA[id]);
+            if (id != 0) {
+                int parent = indexA.parentOf(id);
+                leafEndA[parent] = Math.max(leafEndA[parent], leafEndA[id]);
+            }
+        }
+
+        int sizeB = indexB.size();
+        leafIdB = new int[maxVertex + 1];
+        leavesBelowB = new int[sizeB];
+        int leavesOfB = 0;
+        for (int id = 0; id < sizeB; id++) {
+            RootedTreeNode node = indexB.nodeOf(id);
+            if (node.isALeaf()) {
+                int vertex = ((MDTreeLeafNode) node).getVertexNo();
+                if (vertex > maxVertex) {
+                    throw new IllegalArgumentException("Error: vertex " + vertex + " is not a leaf of both trees.");
+                }
+                leafIdB[vertex] = id;
+                leavesBelowB[id] = 1;
+                leavesOfB++;
+            }
+        }
+        if (leavesOfB != nLeaves) {
+            throw new IllegalArgumentException("Error: trees have " + nLeaves + " and " + leavesOfB + " leaves.");
+        }
+        accumulate(leavesBelowB);
+    }
+
+    // sums up the leaf counts bottom-up, using that children have larger preorder ids
+    private void accumulate(int[] below) {
+        for (int id = below.length - 1; id > 0; id--) {
+            below[indexB.parentOf(id)] += below[id];
+        }
+    }
+
+    long compute(boolean parallel) {
+        IntStream innerNodes = IntStream.range(0, indexA.size()).filter(id -> !indexA.nodeOf(id).isALeaf());
+        if (parallel) {
+            ThreadLocal<int[]> counts = ThreadLocal.withInitial(() -> new int[indexB.size()]);
+            return innerNodes.parallel().mapToLong(u -> distanceOfPairsBelow(u, counts.get())).sum();
+        } else {
+            int[] count = new int[indexB.size()];
+            return innerNodes.mapToLong(u -> distanceOfPairsBelow(u, count)).sum();
+        }
+    }
+
+    /**
+     * Sum over all leaf pairs {x,y} with lca_A(x,y) = u.
+     */
+    private long distanceOfPairsBelow(int u, int[] inUBelowB) {
+        RootedTreeNode nodeU = indexA.nodeOf(u);
+        if (nodeU.getNumChildren() < 2) {
+            return 0;
+        }
+        // |L_A(u) ∩ L_B(v)| for all nodes v of B
+        Arrays.fill(inUBelowB, 0);
+        for (int i = leafStartA[u]; i < leafEndA[u]; i++) {
+            inUBelowB[leafIdB[vertexOf(leafSequenceA[i])]] = 1;
+        }
+        accumulate(inUBelowB);
+
+        long sizeU = leafEndA[u] - leafStartA[u];
+        long ret = 0;
+        // pairs from different children: each child against the leaves of u right of it
+        for (RootedTreeNode child = nodeU.getFirstChild(); child != null; child = child.getRightSibling()) {
+            int c = indexA.idOf(child);
+            for (int i = leafStartA[c]; i < leafEndA[c]; i++) {
+                int x = leafIdB[vertexOf(leafSequenceA[i])];
+                for (int j = leafEndA[c]; j < leafEndA[u]; j++) {
+                    int v = indexB.lca(x, leafIdB[vertexOf(leafSequenceA[j])]);
+                    ret += sizeU + leavesBelowB[v] - 2 * inUBelowB[v];
+                }
+            }
+        }
+        return ret;
+    }
+
+    private int vertexOf(int leafIdA) {
+        return ((MDTreeLeafNode) indexA.nodeOf(leafIdA)).getVertexNo();
+    }
+
+    int getnLeaves() {
+        return nLeaves;
+    }
+}
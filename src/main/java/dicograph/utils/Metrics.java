@@ -0,0 +1,195 @@
+package dicograph.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Process-wide counters, timers and histograms by name, e.g. "DirectedMD/Fact. Permutation".
+ * Recording is lock-free and can be done from any thread. A timer is a histogram of nanoseconds.
+ * Histograms keep count, sum, min, max and power-of-two buckets, so percentiles are upper bounds within factor 2.
+ */
+public final class Metrics {
+
+    private static final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Histogram> timers = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static void count(String name) {
+        count(name, 1);
+    }
+
+    public static void count(String name, long amount) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * Adds a value, e.g. a size, to the histogram of that name. Values must not be negative.
+     */
+    public static void record(String name, long value) {
+        histograms.computeIfAbsent(name, k -> new Histogram()).add(value);
+    }
+
+    /**
+     * @param nanos elapsed time, e.g. System.nanoTime() - start
+     */
+    public static void recordTime(String name, long nanos) {
+        timers.computeIfAbsent(name, k -> new Histogram()).add(nanos);
+    }
+
+    public static long getCount(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * @return the histogram of that name, null if nothing was recorded
+     */
+    public static Histogram getHistogram(String name) {
+        return histograms.get(name);
+    }
+
+    /**
+     * @return the timer of that name in nanoseconds, null if nothing was recorded
+     */
+    public static Histogram getTimer(String name) {
+        return timers.get(name);
+    }
+
+    /**
+     * Current values of all counters, sorted by name.
+     */
+    public static Map<String, Long> getCounts() {
+        TreeMap<String, Long> ret = new TreeMap<>();
+        counters.forEach((name, counter) -> ret.put(name, counter.sum()));
+        return ret;
+    }
+
+    public static Map<String, Histogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    public static Map<String, Histogram> getTimers() {
+        return new TreeMap<>(timers);
+    }
+
+    public static void reset() {
+        counters.clear();
+        histograms.clear();
+        timers.clear();
+    }
+
+    /**
+     * @return all metrics as table, one line each. Times in ms.
+     */
+    public static String summary() {
+        StringBuilder ret = new StringBuilder("Metrics:\n");
+        getTimers().forEach((name, timer) -> ret.append(String.format(
+                "  time  %-40s count %8d, total %10.1f ms, mean %9.3f, p50 <= %9.3f, p99 <= %9.3f, max %9.3f%n",
+                name, timer.getCount(), ms(timer.getSum()), ms(timer.getMean()), ms(timer.getPercentile(0.5)),
+                ms(timer.getPercentile(0.99)), ms(timer.getMax()))));
+        getHistograms().forEach((name, histogram) -> ret.append(String.format(
+                "  value %-40s count %8d, sum %12d, mean %9.1f, p50 <= %9d, p99 <= %9d, max %9d%n",
+                name, histogram.getCount(), histogram.getSum(), histogram.getMean(), histogram.getPercentile(0.5),
+                histogram.getPercentile(0.99), histogram.getMax())));
+        getCounts().forEach((name, count) -> ret.append(String.format("  count %-40s %d%n", name, count)));
+        return ret.toString();
+    }
+
+    private static double ms(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public static final class Histogram {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+        private final LongAdder[] buckets = new LongAdder[64]; // bucket k: values with bit length k
+
+        private Histogram() {
+            for (int k = 0; k < buckets.length; k++) {
+                buckets[k] = new LongAdder();
+            }
+        }
+
+        void add(long value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Error: negative value " + value + " for histogram.");
+            }
+            count.increment();
+            sum.add(value);
+            min.accumulateAndGet(value, Math::min);
+            max.accumulateAndGet(value, Math::max);
+            buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getSum() {
+            return sum.sum();
+        }
+
+        public double getMean() {
+            long n = getCount();
+            return n == 0 ? 0 : (double) getSum() / n;
+        }
+
+        public long getMin() {
+            return getCount() == 0 ? 0 : min.get();
+        }
+
+        public long getMax() {
+            return getCount() == 0 ? 0 : max.get();
+        }
+
+        /**
+         * @param fraction e.g. 0.99
+         * @return an upper bound for the value at that fraction, at most twice the real one and at most max
+         */
+        public long getPercentile(double fraction) {
+            long n = getCount();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(fraction * n);
+            long seen = 0;
+            for (int k = 0; k < buckets.length; k++) {
+                seen += buckets[k].sum();
+                if (seen >= rank) {
+                    long upper = k == 0 ? 0 : k == 63 ? Long.MAX_VALUE : (1L << k) - 1;
+                    return Math.min(upper, getMax());
+                }
+            }
+            return getMax();
+        }
+    }
+}
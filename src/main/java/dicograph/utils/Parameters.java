@@ -9,8 +9,12 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
 import java.nio.file.FileSystems;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 
+import dicograph.modDecomp.MDEngine;
+
 /*
  *   This source file is part of the program for editing directed graphs
  *   into cographs using modular decomposition.
@@ -41,6 +45,8 @@ public class Parameters {
     // prev: Force stop if forbiddenSub-Score <= this value during first run and use brute-force/branching/ILP in second run to complete.
     private double weightMultiplier = 1.0;
     private int solutionGap = 0; // all best solutions by default.
+    private int verificationThreads = 1; // candidate edits verified in parallel
+    private int mdCacheSize = 0; // MD trees of edited graphs kept during one run, 0: no cache
 
     private int lazyreach = -1;
     private int lazyRestart = 5;
@@ -91,6 +97,12 @@ public class Parameters {
         options.addOption(output);
         // default: same as input, with timestamp.
 
+        Option engine = new Option("engine",true,"Undirected MD of G_d and G_s: external (C/C++ program, default), java (in-process) or worker (C/C++ program kept running, needs a build with --worker support)");
+        engine.setArgName("type");
+        options.addOption(engine);
+        options.addOption("mdpar","Computes the MD of G_d and G_s in parallel on the common fork-join pool.");
+        options.addOption("mdcheck","Debug: compares the MD steps with the results of the C/C++ programs, which must be built.");
+
         Option log = new Option("log",true,"Log level: warning/info/fine/finer/finest/off");
         log.setArgName("level");
         options.addOption(log);
@@ -111,6 +123,8 @@ public class Parameters {
         // method tweaking:
         options.addOption("gap",true,"Accept solutions with: cost <= best cost + gap. Default: 0; -1 exits after first");
         options.addOption("t",true, "Time limit of an ILP/Brute-Force-Computation in s. Default: 1h");
+        options.addOption("vthreads",true,"Number of threads verifying the candidate edits of a run. Default: 1");
+        options.addOption("mdcache",true,"Caches the MD of this many edited graphs, least recently used ones are evicted. Default: 0 (off)");
 
         options.addOption("bfth",true,"Step 2 when number of primes < brute-force-TH. Default: 10");
         options.addOption("bfgap",true,"Exit module-bf when subset-size > best solution + bfgap. Default: 0; -1 exits after first.");
@@ -161,6 +175,18 @@ public class Parameters {
             if(input.hasOption("t")){
                 timeOut = Long.parseLong( input.getOptionValue("t"));
             }
+            if(input.hasOption("mdcache")){
+                mdCacheSize = Integer.parseInt( input.getOptionValue("mdcache"));
+                if(mdCacheSize < 0){
+                    throw new IllegalArgumentException("Error: -mdcache must not be negative, was " + mdCacheSize);
+                }
+            }
+            if(input.hasOption("vthreads")){
+                verificationThreads = Integer.parseInt( input.getOptionValue("vthreads"));
+                if(verificationThreads < 1){
+                    throw new IllegalArgumentException("Error: -vthreads must be at least 1, was " + verificationThreads);
+                }
+            }
             if(input.hasOption("hth")){
                 hardThreshold = Integer.parseInt( input.getOptionValue("hth"));
             }
@@ -200,8 +226,8 @@ public class Parameters {
     private void help(){
         HelpFormatter helpF = new HelpFormatter();
         String usage = "dmdedit -i <infile> [-options] or dmdedit -test <m n k> [-options]";
-        String header = "Global flags: -i, -o, -log, -v, -md, -test\n" +
-                "General editing flags: -t -gap\n" +
+        String header = "Global flags: -i, -o, -log, -v, -md, -test, -engine, -mdpar, -mdcheck\n" +
+                "General editing flags: -t -gap -vthreads -mdcache\n" +
                 "Editing methods (If several, chooses best solution):  \n" +
                 "  -lazy, -gforce, -gilp; -ilp, -ilpglobal\n" +
                 "Parameters for lazy greedy method:\n" +
@@ -288,6 +314,31 @@ public class Parameters {
         }
     }
 
+    public MDEngine getMDEngine(){
+        if(input.hasOption("engine")) {
+            String name = input.getOptionValue("engine");
+            switch (name) {
+                case "java":
+                    return MDEngine.JAVA;
+                case "external":
+                    return MDEngine.EXTERNAL;
+                case "worker":
+                    return MDEngine.WORKER;
+                default:
+                    throw new IllegalArgumentException("Error: unknown engine " + name);
+            }
+        }
+        return MDEngine.EXTERNAL;
+    }
+
+    public Executor getMDExecutor(){
+        return input.hasOption("mdpar") ? ForkJoinPool.commonPool() : null;
+    }
+
+    public boolean isMDCrossCheck(){
+        return input.hasOption("mdcheck");
+    }
+
     // methods
     public boolean isLazy() {
         return lazy;
@@ -377,4 +428,12 @@ public class Parameters {
     public int getEditStart() {
         return editStart;
     }
+
+    public int getVerificationThreads() {
+        return verificationThreads;
+    }
+
+    public int getMDCacheSize() {
+        return mdCacheSize;
+    }
 }
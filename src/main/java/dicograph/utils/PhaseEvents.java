@@ -0,0 +1,286 @@
+package dicograph.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ *   This source file is part of the program for editing directed graphs
+ *   into cographs using modular decomposition.
+ *   Copyright (C) 2018 Fynn Leitow
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Java Flight Recorder events for the decomposition and editing phases, category "Dicograph".
+ * Record e.g. with -XX:StartFlightRecording. A begin method returns the started event, or null if JFR is not
+ * available (Java 8 before 8u262) or the event type is disabled; the end methods accept null and do nothing then.
+ * The event classes are only loaded if JFR is available.
+ */
+public final class PhaseEvents {
+
+    private static final boolean available = isJfrAvailable();
+
+    private PhaseEvents() {
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, PhaseEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    public static Object beginDecomposition(int nVertices) {
+        return available ? Jfr.beginDecomposition(nVertices) : null;
+    }
+
+    public static void endDecomposition(Object event, int nModules, int nPrimes) {
+        if (event != null) {
+            Jfr.endDecomposition(event, nModules, nPrimes);
+        }
+    }
+
+    public static Object beginStep() {
+        return available ? Jfr.beginStep() : null;
+    }
+
+    /**
+     * @param phase e.g. "DirectedMD"
+     * @param step e.g. "Fact. Permutation"
+     */
+    public static void endStep(Object event, String phase, String step) {
+        if (event != null) {
+            Jfr.endStep(event, phase, step);
+        }
+    }
+
+    /**
+     * Editing of one prime module in MDEditor.
+     */
+    public static Object beginPrimeEdit(String method, int primeSize) {
+        return available ? Jfr.beginPrimeEdit(method, primeSize) : null;
+    }
+
+    /**
+     * @param cost lowest cost found, negative if not successful
+     */
+    public static void endPrimeEdit(Object event, int editsTried, int cost) {
+        if (event != null) {
+            Jfr.endPrimeEdit(event, editsTried, cost);
+        }
+    }
+
+    /**
+     * Computation of the edits of a prime's quotient graph in PrimeSubgraph.
+     */
+    public static Object beginSubgraphEdits(String method, int primeSize) {
+        return available ? Jfr.beginSubgraphEdits(method, primeSize) : null;
+    }
+
+    public static void endSubgraphEdits(Object event, int editsTried, int cost) {
+        if (event != null) {
+            Jfr.endSubgraphEdits(event, editsTried, cost);
+        }
+    }
+
+    public static Object beginIlpSolve(int nVertices) {
+        return available ? Jfr.beginIlpSolve(nVertices) : null;
+    }
+
+    public static void endIlpSolve(Object event, int solutions, int cost) {
+        if (event != null) {
+            Jfr.endIlpSolve(event, solutions, cost);
+        }
+    }
+
+    // all references to jdk.jfr are here
+    private static final class Jfr {
+
+        private static <T extends Event> T begin(T event) {
+            if (!event.isEnabled()) {
+                return null;
+            }
+            event.begin();
+            return event;
+        }
+
+        static Object beginDecomposition(int nVertices) {
+            DecompositionEvent event = begin(new DecompositionEvent());
+            if (event != null) {
+                event.vertices = nVertices;
+            }
+            return event;
+        }
+
+        static void endDecomposition(Object e, int nModules, int nPrimes) {
+            DecompositionEvent event = (DecompositionEvent) e;
+            event.end();
+            if (event.shouldCommit()) {
+                event.modules = nModules;
+                event.primes = nPrimes;
+                event.commit();
+            }
+        }
+
+        static Object beginStep() {
+            return begin(new StepEvent());
+        }
+
+        static void endStep(Object e, String phase, String step) {
+            StepEvent event = (StepEvent) e;
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase;
+                event.step = step;
+                event.commit();
+            }
+        }
+
+        static Object beginPrimeEdit(String method, int primeSize) {
+            PrimeEditEvent event = begin(new PrimeEditEvent());
+            if (event != null) {
+                event.method = method;
+                event.primeSize = primeSize;
+            }
+            return event;
+        }
+
+        static void endPrimeEdit(Object e, int editsTried, int cost) {
+            PrimeEditEvent event = (PrimeEditEvent) e;
+            event.end();
+            if (event.shouldCommit()) {
+                event.editsTried = editsTried;
+                event.cost = cost;
+                event.commit();
+            }
+        }
+
+        static Object beginSubgraphEdits(String method, int primeSize) {
+            SubgraphEditsEvent event = begin(new SubgraphEditsEvent());
+            if (event != null) {
+                event.method = method;
+                event.primeSize = primeSize;
+            }
+            return event;
+        }
+
+        static void endSubgraphEdits(Object e, int editsTried, int cost) {
+            SubgraphEditsEvent event = (SubgraphEditsEvent) e;
+            event.end();
+            if (event.shouldCommit()) {
+                event.editsTried = editsTried;
+                event.cost = cost;
+                event.commit();
+            }
+        }
+
+        static Object beginIlpSolve(int nVertices) {
+            IlpSolveEvent event = begin(new IlpSolveEvent());
+            if (event != null) {
+                event.vertices = nVertices;
+            }
+            return event;
+        }
+
+        static void endIlpSolve(Object e, int solutions, int cost) {
+            IlpSolveEvent event = (IlpSolveEvent) e;
+            event.end();
+            if (event.shouldCommit()) {
+                event.solutions = solutions;
+                event.cost = cost;
+                event.commit();
+            }
+        }
+    }
+
+    @Name("dicograph.Decomposition")
+    @Label("Modular Decomposition")
+    @Category("Dicograph")
+    @Description("DirectedMD.computeModularDecomposition")
+    static final class DecompositionEvent extends Event {
+        @Label("Vertices")
+        int vertices;
+        @Label("Strong Modules")
+        @Description("Inner nodes of the MD tree, including the root")
+        int modules;
+        @Label("Prime Modules")
+        int primes;
+    }
+
+    @Name("dicograph.Step")
+    @Label("Step")
+    @Category("Dicograph")
+    @Description("Step of a phase, between two TimerLog entries")
+    static final class StepEvent extends Event {
+        @Label("Phase")
+        String phase;
+        @Label("Step")
+        String step;
+    }
+
+    @Name("dicograph.PrimeEdit")
+    @Label("Prime Edit")
+    @Category("Dicograph")
+    @Description("MDEditor: edits for one prime module, as edits of the whole graph")
+    static final class PrimeEditEvent extends Event {
+        @Label("Method")
+        String method;
+        @Label("Prime Size")
+        @Description("Number of children of the prime")
+        int primeSize;
+        @Label("Edits Tried")
+        @Description("Number of edit sets computed for the prime")
+        int editsTried;
+        @Label("Cost")
+        @Description("Lowest cost found, negative if not successful")
+        int cost;
+    }
+
+    @Name("dicograph.SubgraphEdits")
+    @Label("Subgraph Edits")
+    @Category("Dicograph")
+    @Description("PrimeSubgraph.computeEdits: edits of the quotient graph of a prime")
+    static final class SubgraphEditsEvent extends Event {
+        @Label("Method")
+        String method;
+        @Label("Prime Size")
+        int primeSize;
+        @Label("Edits Tried")
+        @Description("Number of evaluated edges and brute-force subsets")
+        int editsTried;
+        @Label("Cost")
+        @Description("Lowest cost found, negative if not successful")
+        int cost;
+    }
+
+    @Name("dicograph.IlpSolve")
+    @Label("ILP Solve")
+    @Category("Dicograph")
+    @Description("CplexDiCographEditingSolver.solve")
+    static final class IlpSolveEvent extends Event {
+        @Label("Vertices")
+        int vertices;
+        @Label("Solutions")
+        int solutions;
+        @Label("Cost")
+        @Description("Lowest editing distance found, -1 if none")
+        int cost;
+    }
+}
@@ -12,6 +12,8 @@ import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
+import dicograph.graphIO.IntDigraph;
+
 /*
  *   This source file is part of the program for editing directed graphs
  *   into cographs using modular decomposition.
@@ -154,6 +156,28 @@ public class SortAndCompare {
         return retSets;
     }
 
+    /**
+     * Same as above for the compact digraph, without iterating edge objects.
+     */
+    public static BitSet[] edgesSortedByPerm(List<Integer> permutation, int[] positionInPermutation, IntDigraph g, boolean outgoing){
+
+        BitSet[] retSets = new BitSet[g.getnVertices()];
+        int n = permutation.size();
+
+        for(int vertex : permutation){
+            int begin = outgoing ? g.outBegin(vertex) : g.inBegin(vertex);
+            int end = outgoing ? g.outEnd(vertex) : g.inEnd(vertex);
+            BitSet edgeTargets = new BitSet(begin < end ? n : 0);
+            for (int e = begin; e < end; e++) {
+                int secondVertex = outgoing ? g.outNeighbour(e) : g.inNeighbour(e);
+                edgeTargets.set(positionInPermutation[secondVertex]);
+            }
+            retSets[ positionInPermutation[vertex] ] = edgeTargets;
+        }
+
+        return retSets;
+    }
+
     /**
      * Returns the symmetrical difference of two BitSet as a new BitSet, not modifying the incoming sets.
      * @param A the BitSet A
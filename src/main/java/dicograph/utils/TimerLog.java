@@ -15,22 +15,39 @@ public class TimerLog {
     private final Stopwatch interimTime;
     private final Logger log;
     private final Level level;
+    private final String metricPrefix; // null: log only
+    private Object stepEvent; // JFR event of the current step, see PhaseEvents
 
     public TimerLog(Logger logger, Level lv){
+        this(logger, lv, null);
+    }
+
+    /**
+     * Also records each interim time in Metrics, as timer metricPrefix/name, and as JFR step event.
+     */
+    public TimerLog(Logger logger, Level lv, String metricPrefix){
         totalTime = Stopwatch.createStarted();
         interimTime = Stopwatch.createStarted();
         log = logger;
         level = lv;
+        this.metricPrefix = metricPrefix;
+        if(metricPrefix != null)
+            stepEvent = PhaseEvents.beginStep();
     }
 
     public void logTime(String name){
         totalTime.stop();
         interimTime.stop();
-        String msg1 = String.format("*** Elapsed time for %s: %s", name, interimTime.toString());
-        String msg2 = String.format("*** Total time after %s: %s", name, totalTime.toString());
+        if(metricPrefix != null) {
+            Metrics.recordTime(metricPrefix + "/" + name, interimTime.elapsed(TimeUnit.NANOSECONDS));
+            PhaseEvents.endStep(stepEvent, metricPrefix, name);
+            stepEvent = PhaseEvents.beginStep();
+        }
+        if(log.isLoggable(level)) {
+            log.log(level, String.format("*** Elapsed time for %s: %s", name, interimTime.toString()));
+            log.log(level, String.format("*** Total time after %s: %s", name, totalTime.toString()));
+        }
         interimTime.reset();
-        log.log(level,msg1);
-        log.log(level,msg2);
 
         interimTime.start();
         totalTime.start();